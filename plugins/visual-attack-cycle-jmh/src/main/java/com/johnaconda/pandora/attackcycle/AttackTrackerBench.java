@@ -0,0 +1,59 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cadence math over a table of NPCS tracked slots (one call per slot per op). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttackTrackerBench
+{
+    private static final int NPCS = 64;
+
+    private final NpcStateTable table = new NpcStateTable();
+    private final int[] slots = new int[NPCS];
+    private int now;
+
+    @Setup
+    public void setup()
+    {
+        final Player me = BenchActors.player(new net.runelite.api.Actor[1]);
+        for (int i = 0; i < NPCS; i++)
+        {
+            slots[i] = table.claim(BenchActors.npc(i, i, SyntheticDb.name(i), 1, me));
+            table.lastAttackTick[slots[i]] = i % 7;
+        }
+        now = 10;
+    }
+
+    @Benchmark
+    public int ticksUntilNext()
+    {
+        now++;
+        int sum = 0;
+        for (int s : slots) sum += AttackTracker.ticksUntilNext(table, s, now, 4 + (s & 3));
+        return sum;
+    }
+
+    @Benchmark
+    public int autoAdvanceIfDue()
+    {
+        now++;
+        for (int s : slots) AttackTracker.autoAdvanceIfDue(table, s, now, 4 + (s & 3));
+        return table.lastAttackTick[slots[0]];
+    }
+}
@@ -0,0 +1,55 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.lang.reflect.Proxy;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+
+/**
+ * Stub actors for the benchmarks: dynamic proxies answering the getters the engine uses, with boxed
+ * answers cached so the stubs themselves don't allocate. Identity semantics, like live actors.
+ */
+final class BenchActors
+{
+    private BenchActors() {}
+
+    static NPC npc(int index, int id, String name, int level, Player target)
+    {
+        final Integer bIndex = index, bId = id, bLevel = level;
+        return (NPC) Proxy.newProxyInstance(NPC.class.getClassLoader(), new Class<?>[] { NPC.class }, (p, m, a) -> {
+            switch (m.getName())
+            {
+                case "getIndex": return bIndex;
+                case "getId": return bId;
+                case "getName": return name;
+                case "getCombatLevel": return bLevel;
+                case "getInteracting": return target;
+                default: return fallback(p, m.getName(), m.getReturnType(), a);
+            }
+        });
+    }
+
+    /** Local player whose own target is the given holder's value (set after the NPCs exist). */
+    static Player player(Actor[] target)
+    {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class }, (p, m, a) -> {
+            if (m.getName().equals("getInteracting")) return target[0];
+            if (m.getName().equals("getName")) return "bench";
+            return fallback(p, m.getName(), m.getReturnType(), a);
+        });
+    }
+
+    private static Object fallback(Object proxy, String method, Class<?> ret, Object[] a)
+    {
+        switch (method)
+        {
+            case "equals": return proxy == a[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return "BenchActor@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                if (ret == int.class) return 0;
+                if (ret == boolean.class) return false;
+                return null;
+        }
+    }
+}
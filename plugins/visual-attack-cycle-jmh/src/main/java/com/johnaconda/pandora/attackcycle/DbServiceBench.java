@@ -0,0 +1,79 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Published-version reads against writers: overlay/engine readers (getProfileByKey) alone, then
+ * sharing the DB with a writer publishing rows (putRec), the way the learning worker does.
+ * A detached DbService, so no disk or config IO is measured.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbServiceBench
+{
+    private static final int PROFILES = 1000;
+
+    private DbService db;
+    private String[] keys;
+
+    @Setup
+    public void setup()
+    {
+        db = DbService.detached(SyntheticDb.build(PROFILES));
+        keys = new String[PROFILES];
+        for (int i = 0; i < PROFILES; i++) keys[i] = SyntheticDb.key(i);
+    }
+
+    @TearDown
+    public void tearDown() { db.close(); }
+
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        int i;
+        final DbModels.RecRow row = new DbModels.RecRow();
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public DbModels.NpcProfile read(Cursor c)
+    {
+        return db.getProfileByKey(keys[(c.i++ & 0x7fffffff) % PROFILES]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public DbModels.NpcProfile contendedRead(Cursor c)
+    {
+        return db.getProfileByKey(keys[(c.i++ & 0x7fffffff) % PROFILES]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedPutRec(Cursor c)
+    {
+        final int k = (c.i++ & 0x7fffffff) % PROFILES;
+        c.row.animId = SyntheticDb.baseAnim(k) + (c.i & 7);
+        c.row.seen = c.i;
+        db.putRec(keys[k], c.row);
+    }
+}
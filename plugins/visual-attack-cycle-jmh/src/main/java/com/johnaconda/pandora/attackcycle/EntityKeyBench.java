@@ -0,0 +1,54 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EntityKey.of: interned = a handful of NPCs seen over and over (the in-fight case); churn = more
+ * distinct names than the intern table keeps, so every lookup builds (and the table keeps clearing).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityKeyBench
+{
+    private static final int HOT = 16;
+    private static final int CHURN = 3 * 4096;
+
+    private final String[] hot = new String[HOT];
+    private final String[] churn = new String[CHURN];
+    private int i;
+
+    @Setup
+    public void setup()
+    {
+        for (int k = 0; k < HOT; k++) hot[k] = SyntheticDb.name(k);
+        for (int k = 0; k < CHURN; k++) churn[k] = "Churn Npc " + k;
+    }
+
+    @Benchmark
+    public DbModels.EntityKey interned()
+    {
+        final int k = (i++) & (HOT - 1);
+        return DbModels.EntityKey.of(hot[k], 100 + k);
+    }
+
+    @Benchmark
+    public DbModels.EntityKey churn()
+    {
+        final int k = (i++) % CHURN;
+        return DbModels.EntityKey.of(churn[k], 100);
+    }
+}
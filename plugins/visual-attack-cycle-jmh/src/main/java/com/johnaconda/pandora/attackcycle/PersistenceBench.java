@@ -0,0 +1,81 @@
+package com.johnaconda.pandora.attackcycle;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole-database save/load of synthetic DBs: the JSON interchange (export/import, same Gson setup)
+ * and the binary shards the backup and config mirror are made of (DbCodec).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBench
+{
+    @Param({ "100", "1000", "10000" })
+    public int profiles;
+
+    private final Gson gson = DbService.gsonBuilder().setPrettyPrinting().create();
+    private DbModels.AttackDb db;
+    private String json;
+    private byte[][] shards;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        db = SyntheticDb.build(profiles);
+        json = gson.toJson(db);
+        shards = encodeAll();
+    }
+
+    @Benchmark
+    public int jsonSave()
+    {
+        return gson.toJson(db).length();
+    }
+
+    @Benchmark
+    public DbModels.AttackDb jsonLoad()
+    {
+        return gson.fromJson(json, DbModels.AttackDb.class);
+    }
+
+    @Benchmark
+    public byte[][] shardSave() throws IOException
+    {
+        return encodeAll();
+    }
+
+    @Benchmark
+    public int shardLoad() throws IOException
+    {
+        int n = 0;
+        for (byte[] s : shards) n += DbCodec.decodeShard(s).rows.size();
+        return n;
+    }
+
+    private byte[][] encodeAll() throws IOException
+    {
+        final byte[][] out = new byte[db.profiles.size()][];
+        int i = 0;
+        for (Map.Entry<String, DbModels.NpcProfile> e : db.profiles.entrySet())
+            out[i++] = DbCodec.encodeShard(e.getKey(), e.getValue(), db.recording.rows.get(e.getKey()));
+        return out;
+    }
+}
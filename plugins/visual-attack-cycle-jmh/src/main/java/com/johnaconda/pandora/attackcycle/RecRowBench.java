@@ -0,0 +1,45 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Gap window upkeep: a learned sample followed by the estimate the countdown would read. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecRowBench
+{
+    private final DbModels.RecRow row = new DbModels.RecRow();
+    private int i;
+
+    @Setup
+    public void setup()
+    {
+        for (int g = 0; g < GapWindow.CAPACITY; g++) row.pushGap(3 + (g & 3));
+    }
+
+    @Benchmark
+    public Integer pushGapThenMedian()
+    {
+        row.pushGap(3 + (i++ & 3));
+        return row.liveEstTicksMedian();
+    }
+
+    @Benchmark
+    public Integer medianOnly()
+    {
+        return row.liveEstTicksMedian();
+    }
+}
@@ -0,0 +1,73 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Deterministic synthetic databases for the benchmarks: profiles with two styles and a phase, plus recordings. */
+final class SyntheticDb
+{
+    static final int ROWS_PER_PROFILE = 6;
+
+    private SyntheticDb() {}
+
+    static String name(int i) { return "Synthetic Npc " + i; }
+    static int level(int i)   { return 1 + (i % 500); }
+    static int npcId(int i)   { return 1 + i; }
+    static int baseAnim(int i) { return 1000 + (i % 97) * 10; }
+
+    static String key(int i) { return DbModels.EntityKey.of(name(i), level(i)).key; }
+
+    static DbModels.AttackDb build(int profiles)
+    {
+        final DbModels.AttackDb db = new DbModels.AttackDb();
+        for (int i = 0; i < profiles; i++)
+        {
+            final DbModels.NpcProfile p = profile(i);
+            db.profiles.put(p.key, p);
+            db.recording.rows.put(p.key, rows(i));
+        }
+        return db;
+    }
+
+    static DbModels.NpcProfile profile(int i)
+    {
+        final DbModels.NpcProfile p = new DbModels.NpcProfile();
+        p.name = name(i);
+        p.level = level(i);
+        p.key = key(i);
+        p.variantIds.add(npcId(i));
+
+        p.base.melee.defaultAnimId = baseAnim(i);
+        p.base.melee.ticks = 4 + (i & 3);
+        p.base.ranged.defaultAnimId = baseAnim(i) + 1;
+        p.base.ranged.ticks = 5;
+        p.base.ranged.projSpeed = 2;
+
+        final DbModels.PhaseProfile enraged = new DbModels.PhaseProfile();
+        enraged.triggerAnimIds.add(baseAnim(i) + 2);
+        enraged.melee.defaultAnimId = baseAnim(i) + 3;
+        enraged.melee.ticks = 3;
+        final DbModels.StyleAnimSettings s = new DbModels.StyleAnimSettings();
+        s.offset = 1;
+        enraged.melee.perAnim.put(baseAnim(i) + 3, s);
+        p.phases.put("Enraged", enraged);
+        return p;
+    }
+
+    static Map<Integer, DbModels.RecRow> rows(int i)
+    {
+        final Map<Integer, DbModels.RecRow> m = new HashMap<>();
+        for (int r = 0; r < ROWS_PER_PROFILE; r++)
+        {
+            final DbModels.RecRow row = new DbModels.RecRow();
+            row.animId = baseAnim(i) + r;
+            row.type = (r < 4 ? DbModels.AnimUiType.ATTACK : DbModels.AnimUiType.NONATTACK);
+            row.style = (r == 1 ? DbModels.Style.RANGED : DbModels.Style.MELEE);
+            row.seen = 10 + r;
+            row.lastSeenTick = 1000 + r;
+            for (int g = 0; g < 10; g++) row.pushGap(3 + ((g + r) & 3));
+            m.put(row.animId, row);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,93 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The overlay view model over N stub NPCs all fighting the local player: rebuilding it
+ * (publishSnapshot, paid once per tick and once per coalesced burst of events), a whole GameTick, and the
+ * overlays' views() read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewsBench
+{
+    private static final int TYPES = 8;
+
+    @Param({ "5", "50", "500" })
+    public int npcs;
+
+    private DbService db;
+    private CombatEngine engine;
+    private Player me;
+    private int op;
+
+    @Setup
+    public void setup()
+    {
+        final DbModels.AttackDb seed = new DbModels.AttackDb();
+        for (int t = 0; t < TYPES; t++)
+        {
+            final DbModels.NpcProfile p = SyntheticDb.profile(t);
+            seed.profiles.put(p.key, p);
+        }
+        db = DbService.detached(seed);
+        engine = new CombatEngine(db, AttackCycleSettings.DEFAULTS, new LearningQueue(LearningQueue.DEFAULT_CAPACITY), () -> {});
+
+        final Actor[] myTarget = new Actor[1];
+        me = BenchActors.player(myTarget);
+        for (int i = 0; i < npcs; i++)
+        {
+            final int t = i % TYPES;
+            final NPC n = BenchActors.npc(100 + i, SyntheticDb.npcId(t), SyntheticDb.name(t), SyntheticDb.level(t), me);
+            if (i == 0) myTarget[0] = n;
+            engine.onNpcSpawned(n, me);
+            engine.onAnimationChanged(n, SyntheticDb.baseAnim(t), me, i % 4); // starts its swing cadence
+        }
+    }
+
+    // Cycles a few ticks past the swings, so every countdown stays live (they hide after 2 missed swings)
+    private int now() { return 4 + (++op & 3); }
+
+    @TearDown
+    public void tearDown() { db.close(); }
+
+    @Benchmark
+    public ViewSnapshot publish()
+    {
+        engine.publishSnapshot(me, now());
+        return engine.snapshot();
+    }
+
+    @Benchmark
+    public ViewSnapshot gameTick()
+    {
+        engine.onGameTick(me, now());
+        return engine.snapshot();
+    }
+
+    @Benchmark
+    public List<AttackCyclePlugin.View> views()
+    {
+        return engine.snapshot().asList();
+    }
+}
@@ -6,6 +6,7 @@ import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
 import net.runelite.client.config.ConfigSection;
+import net.runelite.client.config.Range;
 
 @ConfigGroup("attackcycle")
 public interface AttackCycleConfig extends Config
@@ -62,4 +63,24 @@ public interface AttackCycleConfig extends Config
             position = 5
     )
     default boolean countdownStyle() { return false; }
+
+    @Range(min = 1, max = 50)
+    @ConfigItem(
+            keyName = "maxOverheadTimers",
+            name = "Max overhead timers",
+            description = "Most overhead timers drawn per frame; the NPCs attacking soonest win.",
+            section = overlaySection,
+            position = 6
+    )
+    default int maxOverheadTimers() { return 12; }
+
+    @Range(min = 1, max = 20)
+    @ConfigItem(
+            keyName = "maxHudRows",
+            name = "Max HUD rows",
+            description = "Most NPCs listed in the mini HUD; the NPCs attacking soonest win.",
+            section = overlaySection,
+            position = 7
+    )
+    default int maxHudRows() { return 8; }
 }
@@ -1,11 +1,14 @@
 package com.johnaconda.pandora.attackcycle;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.util.List;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
 import javax.inject.Inject;
 
 import net.runelite.client.ui.overlay.Overlay;
@@ -14,29 +17,46 @@ import net.runelite.client.ui.overlay.OverlayPosition;
 
 /**
  * Compact on-screen list of active NPCs with their countdowns.
- * - Purely read-only: pulls from AttackCyclePlugin.views() each frame.
+ * - Purely read-only: reads the tick-computed ViewSnapshot each frame.
  * - No DB writes, no EDT blocking, minimal per-frame allocations.
+ * - Lists the NPCs attacking soonest (top-k on ticks left, up to the configured row budget); NPCs
+ *   without a countdown come last.
+ * - The panel is rendered into a cached image, redrawn only when its content (names, countdowns and
+ *   so urgency colours) changes; a frame is one drawImage. Content is only re-checked when a new
+ *   snapshot or new settings have been published.
  */
 public class AttackCycleHudOverlay extends Overlay
 {
     private final AttackCyclePlugin plugin;
-    private final AttackCycleConfig config;
 
     private final StringBuilder sb = new StringBuilder(32);
-    private Font cachedFont = null;
-    private int cachedFontSize = -1;
+    private final Font font = new Font("Dialog", Font.PLAIN, HUD_FONT_SIZE);
 
     private static final int PAD_X = 8;
     private static final int PAD_Y = 6;
     private static final int ROW_GAP = 1;
-    private static final int MAX_ROWS_DEFAULT = 8;
     private static final int HUD_FONT_SIZE = 14;
+    private static final int ORIGIN = 6;
+
+    private static final Color BG = new Color(0, 0, 0, 140);
+    private static final Color BORDER = new Color(255, 255, 255, 40);
+    private static final Color URGENT = new Color(255, 180, 180);
+
+    // ---- cached surface + the content it shows ----
+    private BufferedImage surface;
+    private int surfaceW, surfaceH;       // panel size (the image has a pixel more for the border)
+    private ViewSnapshot checkedSnapshot; // last snapshot/settings compared against the content below
+    private AttackCycleSettings checkedSettings;
+    private int shownRows = -1;
+    private final int[] shownPos = new int[AttackCycleSettings.MAX_HUD_ROWS]; // row -> view position
+    private final String[] shownNames = new String[AttackCycleSettings.MAX_HUD_ROWS];
+    private final int[] shownTicks = new int[AttackCycleSettings.MAX_HUD_ROWS];
+    private final UrgencyRank rank = new UrgencyRank();
 
     @Inject
-    public AttackCycleHudOverlay(AttackCyclePlugin plugin, AttackCycleConfig config)
+    public AttackCycleHudOverlay(AttackCyclePlugin plugin)
     {
         this.plugin = plugin;
-        this.config = config;
 
         setPosition(OverlayPosition.TOP_LEFT);
         setLayer(OverlayLayer.ABOVE_WIDGETS);
@@ -45,69 +65,107 @@ public class AttackCycleHudOverlay extends Overlay
     @Override
     public Dimension render(Graphics2D g)
     {
-        if (config == null || !safeShowHud())
+        final AttackCycleSettings settings = plugin.settings();
+        if (!settings.showMiniHud)
         {
             return null;
         }
 
-        final List<AttackCyclePlugin.View> views = plugin.views();
-        if (views == null || views.isEmpty())
+        final ViewSnapshot snap = plugin.snapshot();
+        if (snap != checkedSnapshot || settings != checkedSettings)
+        {
+            checkedSnapshot = snap;
+            checkedSettings = settings;
+            if (contentChanged(snap.views, settings.maxHudRows)) redraw(snap.views);
+        }
+        if (surface == null)
         {
             return null;
         }
 
-        ensureFont(g, HUD_FONT_SIZE);
-        final Object oldAA = g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
-        final Object oldFM = g.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS);
-        final Font oldFont = g.getFont();
-        g.setFont(cachedFont != null ? cachedFont : oldFont);
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        g.drawImage(surface, ORIGIN, ORIGIN, null);
+        return new Dimension(surfaceW, surfaceH);
+    }
 
-        final int maxRows = MAX_ROWS_DEFAULT;
-        final int rowHeight = g.getFontMetrics().getHeight() + ROW_GAP;
+    /** Pick the most urgent rows and compare them against the cached ones; remembers the new ones if they differ. */
+    private boolean contentChanged(AttackCyclePlugin.View[] views, int maxRows)
+    {
+        rank.begin(maxRows);
+        for (int i = 0; i < views.length; i++)
+        {
+            final AttackCyclePlugin.View v = views[i];
+            if (v != null && v.npc != null) rank.offer(i, v.ticksLeft);
+        }
+        final int rows = rank.finish();
 
-        int width = 0;
-        int rows = Math.min(views.size(), maxRows);
+        boolean changed = (rows != shownRows);
         for (int i = 0; i < rows; i++)
         {
-            final AttackCyclePlugin.View v = views.get(i);
-            if (v == null || v.npc == null) continue;
+            final AttackCyclePlugin.View v = views[rank.at(i)];
+            final String name = v.npc.getName();
+            shownPos[i] = rank.at(i);
+            if (!changed && v.ticksLeft == shownTicks[i] && Objects.equals(name, shownNames[i])) continue;
+            changed = true;
+            shownNames[i] = name;
+            shownTicks[i] = v.ticksLeft;
+        }
+        shownRows = rows;
+        return changed;
+    }
+
+    /** Render the panel for the cached rows into the surface (or drop it if there's nothing to show). */
+    private void redraw(AttackCyclePlugin.View[] views)
+    {
+        final int rows = shownRows;
 
-            final String line = buildLine(v);
-            width = Math.max(width, g.getFontMetrics().stringWidth(line));
+        // Measure on the current surface (or a scratch one) with the drawing hints
+        final BufferedImage probe = (surface != null ? surface : new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+        final Graphics2D pg = probe.createGraphics();
+        hints(pg);
+        final FontMetrics fm = pg.getFontMetrics(font);
+        pg.dispose();
+
+        final int rowHeight = fm.getHeight() + ROW_GAP;
+        int width = 0;
+        for (int i = 0; i < rows; i++)
+        {
+            width = Math.max(width, fm.stringWidth(buildLine(views[shownPos[i]])));
         }
         if (width == 0)
         {
-            restore(g, oldAA, oldFM, oldFont);
-            return null;
+            surface = null;
+            return;
         }
 
-        final int height = PAD_Y * 2 + rowHeight * rows;
-
-        final int x = 6, y = 6, w = width + PAD_X * 2, h = height;
-        g.setColor(new Color(0, 0, 0, 140));
-        g.fillRoundRect(x, y, w, h, 10, 10);
-        g.setColor(new Color(255, 255, 255, 40));
-        g.drawRoundRect(x, y, w, h, 10, 10);
-
-        int cy = y + PAD_Y + g.getFontMetrics().getAscent();
+        final int w = width + PAD_X * 2, h = PAD_Y * 2 + rowHeight * rows;
+        if (surface == null || surface.getWidth() < w + 1 || surface.getHeight() < h + 1)
+        {
+            surface = new BufferedImage(w + 1, h + 1, BufferedImage.TYPE_INT_ARGB);
+        }
+        surfaceW = w;
+        surfaceH = h;
+
+        final Graphics2D g = surface.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, surface.getWidth(), surface.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+        hints(g);
+        g.setFont(font);
+
+        g.setColor(BG);
+        g.fillRoundRect(0, 0, w, h, 10, 10);
+        g.setColor(BORDER);
+        g.drawRoundRect(0, 0, w, h, 10, 10);
+
+        int cy = PAD_Y + fm.getAscent();
         for (int i = 0; i < rows; i++)
         {
-            final AttackCyclePlugin.View v = views.get(i);
-            if (v == null || v.npc == null) continue;
-
-            final String line = buildLine(v);
-
-            if (v.ticksLeft >= 0 && v.ticksLeft <= 2) g.setColor(new Color(255, 180, 180));
-            else g.setColor(Color.WHITE);
-
-            g.drawString(line, x + PAD_X, cy);
+            final int left = shownTicks[i];
+            g.setColor(left >= 0 && left <= 2 ? URGENT : Color.WHITE);
+            g.drawString(buildLine(views[shownPos[i]]), PAD_X, cy);
             cy += rowHeight;
         }
-
-        restore(g, oldAA, oldFM, oldFont);
-        return new Dimension(w, h);
+        g.dispose();
     }
 
     private String buildLine(AttackCyclePlugin.View v)
@@ -121,24 +179,9 @@ public class AttackCycleHudOverlay extends Overlay
         return sb.toString();
     }
 
-    private boolean safeShowHud()
+    private static void hints(Graphics2D g)
     {
-        try { return config.showMiniHud(); }
-        catch (Throwable t) { return true; }
-    }
-
-    private void ensureFont(Graphics2D g, int size)
-    {
-        if (cachedFont != null && cachedFontSize == size) return;
-        try { cachedFont = new Font("Dialog", Font.PLAIN, size); }
-        catch (Exception ignored) { cachedFont = g.getFont(); }
-        cachedFontSize = size;
-    }
-
-    private void restore(Graphics2D g, Object oldAA, Object oldFM, Font oldFont)
-    {
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldAA);
-        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, oldFM);
-        g.setFont(oldFont);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
     }
 }
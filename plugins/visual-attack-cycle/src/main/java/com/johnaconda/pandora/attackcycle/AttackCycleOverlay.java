@@ -1,11 +1,9 @@
 package com.johnaconda.pandora.attackcycle;
 
-import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import javax.inject.Inject;
 
+import net.runelite.api.Client;
 import net.runelite.api.NPC;
 import net.runelite.client.ui.overlay.Overlay;
 import net.runelite.client.ui.overlay.OverlayLayer;
@@ -14,17 +12,21 @@ import net.runelite.client.ui.overlay.OverlayPosition;
 public class AttackCycleOverlay extends Overlay
 {
     private final AttackCyclePlugin plugin;
-    private final AttackCycleConfig config;
+    private final Client client;
 
-    private final StringBuilder sb = new StringBuilder(4);
-    private Font cachedFont = null;
-    private int cachedFontSize = -1;
+    // shadowed digits for the configured size/colour, blitted per NPC
+    private final DigitAtlas atlas = new DigitAtlas();
+    // render budget: views that may be on screen, the most urgent few of them get projected
+    private final ViewportCull cull = new ViewportCull();
+    private final UrgencyRank rank = new UrgencyRank();
+    // keeps stacked NPCs' labels apart (nudged or merged into one badge)
+    private final LabelLayout layout = new LabelLayout();
 
     @Inject
-    public AttackCycleOverlay(AttackCyclePlugin plugin, AttackCycleConfig config)
+    public AttackCycleOverlay(AttackCyclePlugin plugin, Client client)
     {
         this.plugin = plugin;
-        this.config = config;
+        this.client = client;
 
         setPosition(OverlayPosition.DYNAMIC);
         setLayer(OverlayLayer.ABOVE_SCENE);
@@ -33,59 +35,48 @@ public class AttackCycleOverlay extends Overlay
     @Override
     public java.awt.Dimension render(Graphics2D g)
     {
-        if (!config.showOverheadTimer()) return null;
+        final AttackCycleSettings settings = plugin.settings();
+        if (!settings.showOverheadTimer) return null;
 
-        final int size = Math.max(10, Math.min(28, safeFontSize()));
-        ensureFont(g, size);
+        atlas.ensure(settings.overheadFontSize, settings.overheadColor);
 
-        final Object oldAA = g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
-        final Object oldFM = g.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS);
-        final Font oldFont = g.getFont();
-        g.setFont(cachedFont != null ? cachedFont : oldFont);
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-
-        for (AttackCyclePlugin.View v : plugin.views())
+        final AttackCyclePlugin.View[] views = plugin.snapshot().views;
+        cull.begin(client);
+        rank.begin(settings.maxOverheadTimers);
+        for (int i = 0; i < views.length; i++)
         {
-            if (v.ticksLeft < 0) continue;
+            final AttackCyclePlugin.View v = views[i];
+            if (!DigitAtlas.covers(v.ticksLeft)) continue; // -1 = no countdown
             final NPC npc = v.npc;
-            if (npc == null) continue;
+            if (npc == null || !cull.mayBeOnScreen(npc.getLocalLocation())) continue;
+            rank.offer(i, v.ticksLeft);
+        }
 
-            sb.setLength(0);
-            sb.append(v.ticksLeft);
-            final String text = sb.toString();
+        // Project the most urgent first; they keep their spot when labels collide
+        final int ranked = rank.finish();
+        layout.begin();
+        for (int r = 0; r < ranked; r++)
+        {
+            final AttackCyclePlugin.View v = views[rank.at(r)];
+            final NPC npc = v.npc;
 
+            // Anchor for empty text is the head point itself; labels are centred on it like drawString would
             final int zOffset = Math.max(0, npc.getLogicalHeight()) + 35;
-            final net.runelite.api.Point loc = npc.getCanvasTextLocation(g, text, zOffset);
+            final net.runelite.api.Point loc = npc.getCanvasTextLocation(g, "", zOffset);
             if (loc == null) continue;
 
-            final Color color = safeOverheadColor();
-            g.setColor(new Color(0, 0, 0, 180));
-            g.drawString(text, loc.getX() + 1, loc.getY() + 1);
-
-            g.setColor(color);
-            g.drawString(text, loc.getX(), loc.getY());
+            layout.add(npc, npc.getName(), v.ticksLeft, loc.getX(), loc.getY());
         }
+        layout.layout(atlas);
 
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldAA);
-        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, oldFM);
-        g.setFont(oldFont);
+        // Least urgent first, so the most urgent label ends up on top
+        for (int i = layout.size() - 1; i >= 0; i--)
+        {
+            if (layout.isMerged(i)) continue;
+            final String badge = layout.badge(i);
+            if (badge != null) atlas.drawText(g, badge, layout.textX(i), layout.baseline(i));
+            else atlas.draw(g, layout.value(i), layout.textX(i), layout.baseline(i));
+        }
         return null;
     }
-
-    private int safeFontSize(){ try { return config.overheadFontSize(); } catch (Throwable t){ return 14; } }
-
-    private void ensureFont(Graphics2D g, int size)
-    {
-        if (cachedFont != null && cachedFontSize == size) return;
-        try { cachedFont = new Font("Dialog", Font.BOLD, size); }
-        catch (Exception ignored) { cachedFont = g.getFont(); }
-        cachedFontSize = size;
-    }
-
-    private Color safeOverheadColor()
-    {
-        try { return config.overheadColor(); }
-        catch (Throwable t) { return Color.WHITE; }
-    }
 }
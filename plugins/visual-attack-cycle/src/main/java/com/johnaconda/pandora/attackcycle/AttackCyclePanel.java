@@ -45,12 +45,15 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
     private final JTextField txtSearch   = new JTextField();
     private final JButton btnRefreshList = new JButton("Refresh");
 
-    private final DefaultListModel<NpcProfile> listModel = new DefaultListModel<>();
-    private final JList<NpcProfile> npcList = new JList<>(listModel);
+    private final DefaultListModel<ProfileSummary> listModel = new DefaultListModel<>();
+    private final JList<ProfileSummary> npcList = new JList<>(listModel);
 
     private final JButton btnAdvanced    = new JButton("Advanced…");
     private final JButton btnSaveAll     = new JButton("Save");
     private final JButton btnEraseAll    = new JButton("Erase database…");
+    private final JButton btnExportJson  = new JButton("Export JSON…");
+    private final JButton btnImportJson  = new JButton("Import JSON…");
+    private final JButton btnExportCapture = new JButton("Export capture…");
 
     // ===== Advanced window =====
     private JFrame advancedFrame;
@@ -119,8 +122,8 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
         npcList.setCellRenderer(new DefaultListCellRenderer() {
             @Override public Component getListCellRendererComponent(JList<?> list, Object val, int index, boolean sel, boolean focus) {
                 super.getListCellRendererComponent(list, val, index, sel, focus);
-                if (val instanceof NpcProfile) {
-                    NpcProfile p = (NpcProfile) val;
+                if (val instanceof ProfileSummary) {
+                    ProfileSummary p = (ProfileSummary) val;
                     String name = (p.name == null ? "??" : p.name);
                     setText(name + " · " + p.level + "  " + p.variantIds);
                 }
@@ -152,6 +155,17 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
         bottom.add(btnAdvanced);
         bottom.add(btnEraseAll);
         root.add(bottom);
+        root.add(Box.createVerticalStrut(4));
+
+        JPanel interchange = new JPanel(new FlowLayout(FlowLayout.RIGHT,6,0));
+        interchange.add(btnExportJson);
+        interchange.add(btnImportJson);
+        root.add(interchange);
+        root.add(Box.createVerticalStrut(4));
+
+        JPanel capture = new JPanel(new FlowLayout(FlowLayout.RIGHT,6,0));
+        capture.add(btnExportCapture);
+        root.add(capture);
 
         add(root, BorderLayout.CENTER);
     }
@@ -172,11 +186,38 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
         btnAdvanced.addActionListener(e -> openAdvanced(0));
 
         btnSaveAll.addActionListener(e -> {
-            try { db.setHardOffline(false); db.save(); db.backupToFile(); }
-            catch (Exception ignored) {}
+            // save() only snapshots; serialization + file/config writes happen on AC-db
+            try { db.setHardOffline(false); db.save(); }
             finally { db.setHardOffline(true); }
         });
 
+        btnExportJson.addActionListener(e -> {
+            JFileChooser fc = new JFileChooser();
+            fc.setSelectedFile(new java.io.File("attack-cycle-export.json"));
+            if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            db.exportJson(fc.getSelectedFile().toPath(), ok -> SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, ok ? "Export written." : "Export failed.", "Attack Cycle",
+                            ok ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE)));
+        });
+
+        btnImportJson.addActionListener(e -> {
+            JFileChooser fc = new JFileChooser();
+            if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            db.importJson(fc.getSelectedFile().toPath(), ok -> SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, ok ? "Import applied." : "Import failed: not an attack-cycle export.", "Attack Cycle",
+                            ok ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE)));
+        });
+
+        btnExportCapture.setToolTipText("Save the last few minutes of combat events for offline replay.");
+        btnExportCapture.addActionListener(e -> {
+            JFileChooser fc = new JFileChooser();
+            fc.setSelectedFile(new java.io.File("attack-cycle-capture.acrp"));
+            if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            plugin.exportCapture(fc.getSelectedFile().toPath(), ok -> SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this, ok ? "Capture written." : "Capture failed.", "Attack Cycle",
+                            ok ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE)));
+        });
+
         btnEraseAll.addActionListener(e -> {
             int res = JOptionPane.showConfirmDialog(this,
                     "This will erase ALL Attack Cycle profiles and recordings.\nAre you sure?",
@@ -232,7 +273,7 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
                     JComponent.WHEN_IN_FOCUSED_WINDOW
             );
 
-            NpcProfile sel = selectedListProfile();
+            ProfileSummary sel = selectedListProfile();
             rebuildNpcCombos();
 
             // compact: combos shouldn’t stretch tall
@@ -405,35 +446,29 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
 
     private void saveProfileEdits()
     {
-        NpcProfile p = currentProfileOrNull();
-        if (p == null) return;
-
-        String phase = (String) comboPhase.getSelectedItem();
-        PhaseProfile ph = "base".equals(phase) ? p.base : p.phases.get(phase);
-        if (ph == null) {
-            ph = new PhaseProfile();
-            if (!"base".equals(phase)) p.phases.put(phase, ph);
-        }
-
-        panelMelee.storeInto(ph.melee);
-        panelRanged.storeInto(ph.ranged);
-        panelMagic.storeInto(ph.magic);
-        panelCharge.storeInto(ph.chargeup);
+        NpcItem it = (NpcItem) comboNpcProfile.getSelectedItem();
+        if (it == null) return;
+        final String phase = (String) comboPhase.getSelectedItem();
+        // Only the edited phase's fields are written, onto the current version (learning may have moved on)
+        final boolean saved = db.updateProfile(it.key, p -> {
+            PhaseProfile ph = "base".equals(phase) ? p.base : p.phases.get(phase);
+            if (ph == null) {
+                ph = new PhaseProfile();
+                if (!"base".equals(phase)) p.phases.put(phase, ph);
+            }
 
-        ph.triggerAnimIds = parseInts(txtPhaseAnimTriggers.getText());
-        ph.triggerNpcIds  = parseInts(txtPhaseNpcTriggers.getText());
+            panelMelee.storeInto(ph.melee);
+            panelRanged.storeInto(ph.ranged);
+            panelMagic.storeInto(ph.magic);
+            panelCharge.storeInto(ph.chargeup);
 
-        db.putProfile(p);
+            ph.triggerAnimIds = parseInts(txtPhaseAnimTriggers.getText());
+            ph.triggerNpcIds  = parseInts(txtPhaseNpcTriggers.getText());
+        });
+        if (!saved) return;
         JOptionPane.showMessageDialog(this, "Profile saved.", "Attack Cycle", JOptionPane.INFORMATION_MESSAGE);
     }
 
-    private NpcProfile currentProfileOrNull()
-    {
-        NpcItem it = (NpcItem) comboNpcProfile.getSelectedItem();
-        if (it == null) return null;
-        return db.getProfileByKey(it.key);
-    }
-
     // --- Recording tab
     private JPanel buildRecordingTab()
     {
@@ -530,16 +565,16 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
     // ================= Helpers =================
     private void refreshList()
     {
-        List<NpcProfile> rows = db.searchProfiles(txtSearch.getText());
+        List<ProfileSummary> rows = db.searchProfiles(txtSearch.getText());
         listModel.clear();
-        for (NpcProfile p : rows) listModel.addElement(p);
+        for (ProfileSummary p : rows) listModel.addElement(p);
     }
 
-    private NpcProfile selectedListProfile() { return npcList.getSelectedValue(); }
+    private ProfileSummary selectedListProfile() { return npcList.getSelectedValue(); }
 
     private void doRelearnSelected()
     {
-        NpcProfile p = selectedListProfile();
+        ProfileSummary p = selectedListProfile();
         if (p == null) return;
         int res = JOptionPane.showConfirmDialog(this,
                 "Clear tags and estimates for:\n" + p.name + " · " + p.level + " ?",
@@ -549,7 +584,7 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
 
     private void doRemoveSelected()
     {
-        NpcProfile p = selectedListProfile();
+        ProfileSummary p = selectedListProfile();
         if (p == null) return;
         int res = JOptionPane.showConfirmDialog(this,
                 "Remove ALL data for:\n" + p.name + " · " + p.level + " ?",
@@ -562,9 +597,8 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
 
     private void rebuildNpcCombos()
     {
-        Map<String, NpcProfile> map = db.getAllProfiles();
-        List<NpcItem> items = map.values().stream()
-                .sorted(Comparator.comparing((NpcProfile p) -> p.name).thenComparingInt(p -> p.level))
+        List<NpcItem> items = db.listProfiles().stream()
+                .sorted(Comparator.comparing((ProfileSummary p) -> p.name).thenComparingInt(p -> p.level))
                 .map(p -> new NpcItem(p.key, (p.name == null ? "??" : p.name) + " · " + p.level))
                 .collect(Collectors.toList());
 
@@ -760,12 +794,13 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
     private static final class RecRowView {
         int animId; AnimUiType type; Style style;
         int seen; Integer estTicks; Integer userTicks; Integer userProj; int lastSeenTick;
+        String learned; // long-horizon estimate + confidence; "low" ones are ignored by auto-update
     }
 
     private final class RecTableModel extends AbstractTableModel
     {
-        private final String[] COLS = {"Anim", "Type", "Style", "Seen", "EstTicks", "UserTicks", "UserProj", "LastSeen"};
-        private final Class<?>[] TYPES = {Integer.class, String.class, String.class, Integer.class, Integer.class, Integer.class, Integer.class, Integer.class};
+        private final String[] COLS = {"Anim", "Type", "Style", "Seen", "EstTicks", "UserTicks", "UserProj", "LastSeen", "Learned"};
+        private final Class<?>[] TYPES = {Integer.class, String.class, String.class, Integer.class, Integer.class, Integer.class, Integer.class, Integer.class, String.class};
         private List<RecRowView> rows = new ArrayList<>();
         private String boundNpcKey = null;
 
@@ -786,6 +821,7 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
                     v.userTicks = r.estTicksUser;
                     v.userProj = r.estProjSpeedUser;
                     v.lastSeenTick = r.lastSeenTick;
+                    v.learned = learnedLabel(r.gapHist);
                     rows.add(v);
                 }
                 rows.sort(Comparator.comparingInt(a -> a.animId));
@@ -811,6 +847,7 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
                 case 5: return v.userTicks;
                 case 6: return v.userProj;
                 case 7: return v.lastSeenTick;
+                case 8: return v.learned;
             }
             return null;
         }
@@ -819,29 +856,36 @@ public final class AttackCyclePanel extends PluginPanel implements DbService.Lis
         {
             if (boundNpcKey == null) return;
             RecRowView v = rows.get(r);
-            RecRow row = db.getOrCreateRec(boundNpcKey, v.animId);
 
+            // Each edit writes just its field onto the current row (AC-learn may have published since)
             switch (c) {
                 case 1: // type
                     try { v.type = AnimUiType.valueOf(aValue.toString()); }
                     catch (Exception ignored) { v.type = AnimUiType.UNKNOWN; }
-                    row.type = v.type; db.putRec(boundNpcKey, row); break;
+                    db.updateRec(boundNpcKey, v.animId, row -> row.type = v.type); break;
                 case 2: // style
                     try { v.style = Style.valueOf(aValue.toString()); }
                     catch (Exception ignored) { v.style = Style.UNKNOWN; }
-                    row.style = v.style; db.putRec(boundNpcKey, row); break;
+                    db.updateRec(boundNpcKey, v.animId, row -> row.style = v.style); break;
                 case 5: // user ticks
                     try { v.userTicks = (aValue == null ? null : Integer.valueOf(aValue.toString())); }
                     catch (Exception ex) { v.userTicks = null; }
-                    row.estTicksUser = v.userTicks; db.putRec(boundNpcKey, row); break;
+                    db.updateRec(boundNpcKey, v.animId, row -> row.estTicksUser = v.userTicks); break;
                 case 6: // user proj
                     try { v.userProj = (aValue == null ? null : Integer.valueOf(aValue.toString())); }
                     catch (Exception ex) { v.userProj = null; }
-                    row.estProjSpeedUser = v.userProj; db.putRec(boundNpcKey, row); break;
+                    db.updateRec(boundNpcKey, v.animId, row -> row.estProjSpeedUser = v.userProj); break;
             }
             fireTableRowsUpdated(r, r);
         }
 
+        private String learnedLabel(GapHistogram h)
+        {
+            if (h == null || h.isEmpty()) return "";
+            final int pct = (int) Math.round(h.confidence() * 100);
+            return h.estimate() + "t " + (h.isConfident() ? "" : "low ") + pct + "% ±" + String.format("%.1f", Math.sqrt(h.variance()));
+        }
+
         void deleteRowAtSelection()
         {
             int viewRow = recTable.getSelectedRow();
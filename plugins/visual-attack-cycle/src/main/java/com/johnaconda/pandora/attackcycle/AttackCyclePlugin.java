@@ -8,8 +8,12 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import javax.inject.Inject;
 
@@ -18,6 +22,7 @@ import net.runelite.api.events.*;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.ClientToolbar;
@@ -45,23 +50,17 @@ public class AttackCyclePlugin extends Plugin implements DbService.Listener
     private AttackCyclePanel panel;
     private NavigationButton nav;
 
-    // npcIndex -> tracker/phase/lastAnim
-    private final Map<Integer, AttackTracker> trackers = new ConcurrentHashMap<>();
-    private final Map<Integer, String> activePhaseByNpc = new ConcurrentHashMap<>();
-    private final Map<Integer, Integer> lastAnimByNpc = new ConcurrentHashMap<>();
-    private final Map<Integer, Integer> lastAnimTickByNpc = new ConcurrentHashMap<>();
+    // learning input: the engine offers (client thread), AC-learn applies it to the DB
+    private LearningQueue learnQueue;
+    private LearningWorker learner;
+    // combat logic + overlay view model (client thread)
+    private CombatEngine engine;
+    // last few minutes of raw events, for offline replay (client thread)
+    private final CombatRecorder recorder = new CombatRecorder(CombatRecorder.DEFAULT_CAPACITY);
 
-    // batch debug messages once per tick
-    private final ArrayList<String> debugTickBuf = new ArrayList<>();
-    private int debugSuppressed = 0;
-
-    // Panel toggles
-    private volatile boolean recordingEnabled = true;
-    private volatile boolean autoTagEnabled = true;
-    private volatile int autoTagWindow = 2;
-    private volatile boolean autoUpdateProfile = false;
-    private volatile int autoUpdateRepeat = 2;
-    private volatile boolean debugEnabled = false;
+    private volatile boolean snapshotRefreshQueued = false;
+    // config values for the engine and overlays; rebuilt on ConfigChanged
+    private volatile AttackCycleSettings settings = AttackCycleSettings.DEFAULTS;
 
     // ----- DI -----
     @Provides AttackCycleConfig provideConfig(ConfigManager cm){ return cm.getConfig(AttackCycleConfig.class); }
@@ -70,6 +69,14 @@ public class AttackCyclePlugin extends Plugin implements DbService.Listener
     @Override protected void startUp()
     {
         db = new DbService(cfgMgr);
+
+        learnQueue = new LearningQueue(LearningQueue.DEFAULT_CAPACITY);
+        learner = new LearningWorker(db, learnQueue);
+        learner.start();
+        settings = AttackCycleSettings.from(config);
+        final CombatEngine prev = engine;
+        engine = new CombatEngine(db, settings, learnQueue, learner::wake);
+        if (prev != null) engine.copyToggles(prev); // panel toggles survive a plugin restart
         db.addListener(this);
 
         panel = new AttackCyclePanel(db, this);
@@ -93,31 +100,60 @@ public class AttackCyclePlugin extends Plugin implements DbService.Listener
         overlayManager.remove(hud);
         if (nav != null) clientToolbar.removeNavigation(nav);
 
-        trackers.clear();
-        activePhaseByNpc.clear();
-        lastAnimByNpc.clear();
-        lastAnimTickByNpc.clear();
+        if (engine != null) engine.reset();
+        if (learner != null) learner.stop(); // applies what's queued, before the final save
 
         if (db != null)
         {
             db.setHardOffline(false);
             try { db.save(); } finally { db.setHardOffline(true); }
+            db.close();
         }
     }
 
     // ----- Panel API -----
-    void setRecordingEnabled(boolean on){ recordingEnabled = on; }
-    void setAutoTagEnabled(boolean on){ autoTagEnabled = on; }
-    void setAutoUpdateProfile(boolean on){ autoUpdateProfile = on; }
-    void setDebugEnabled(boolean on){ debugEnabled = on; }
-    boolean isRecordingEnabled(){ return recordingEnabled; }
-    boolean isAutoTagEnabled(){ return autoTagEnabled; }
-    boolean isAutoUpdateProfile(){ return autoUpdateProfile; }
-    boolean isDebugEnabled(){ return debugEnabled; }
+    void setRecordingEnabled(boolean on){ engine.recordingEnabled = on; }
+    void setAutoTagEnabled(boolean on){ engine.autoTagEnabled = on; }
+    void setAutoUpdateProfile(boolean on){ engine.autoUpdateProfile = on; }
+    void setDebugEnabled(boolean on){ engine.debugEnabled = on; }
+    boolean isRecordingEnabled(){ return engine.recordingEnabled; }
+    boolean isAutoTagEnabled(){ return engine.autoTagEnabled; }
+    boolean isAutoUpdateProfile(){ return engine.autoUpdateProfile; }
+    boolean isDebugEnabled(){ return engine.debugEnabled; }
     void panelNudged(){}
 
+    /** Write the recorded combat events (see CombatRecorder) to target; onDone gets the outcome off the client thread. */
+    void exportCapture(Path target, Consumer<Boolean> onDone)
+    {
+        clientThread.invokeLater(() -> {
+            final CombatRecorder.Capture cap = recorder.snapshot(); // cheap copy; the encoding happens off-thread
+            CompletableFuture.runAsync(() -> {
+                boolean ok = false;
+                try (OutputStream os = Files.newOutputStream(target)) { cap.write(os); ok = true; }
+                catch (Exception ignored) {}
+                onDone.accept(ok);
+            });
+        });
+    }
+
     // ----- DbService.Listener -----
-    @Override public void onDbChanged(DbService.Change change) { /* overlays pull on render */ }
+    @Override public void onDbChanged(DbService.Change change)
+    {
+        engine.onDbChanged(change);
+        queueSnapshotRefresh();
+    }
+
+    // Event handlers and DB listeners (EDT, AC-db, AC-learn) land here; recompute on the client
+    // thread, once per burst
+    private void queueSnapshotRefresh()
+    {
+        if (snapshotRefreshQueued) return;
+        snapshotRefreshQueued = true;
+        clientThread.invokeLater(() -> {
+            snapshotRefreshQueued = false;
+            engine.publishSnapshot(client.getLocalPlayer(), client.getTickCount());
+        });
+    }
 
     // ----- View model for overlays -----
     public static final class View {
@@ -125,265 +161,88 @@ public class AttackCyclePlugin extends Plugin implements DbService.Listener
         View(NPC n, int left, String key){ this.npc=n; this.ticksLeft=left; this.profileKey=key; }
     }
 
-    public List<View> views()
-    {
-        final Player me = client.getLocalPlayer();
-        if (me == null) return Collections.emptyList();
-
-        final int now = client.getTickCount();
-        final ArrayList<View> out = new ArrayList<>();
-
-        for (NPC n : client.getNpcs())
-        {
-            if (n == null) continue;
-            if (!isRelevant(n, me)) continue;
+    /** Current config values; safe to call from any thread. */
+    AttackCycleSettings settings() { return settings; }
 
-            final DbModels.EntityKey ek = DbModels.EntityKey.of(n.getName(), n.getCombatLevel());
-            final DbModels.NpcProfile prof = db.getProfileByKey(ek.key);
-            final DbModels.PhaseProfile ph = (prof == null) ? null : phaseFor(n, prof);
-            final DbModels.StyleBlock block = (prof == null) ? null : selectStyleBlockForNpc(n, ph, prof);
+    /** Current view model; safe to call from any thread. */
+    ViewSnapshot snapshot() { return engine == null ? ViewSnapshot.EMPTY : engine.snapshot(); }
 
-            final Integer selectedAnim = (block != null ? block.defaultAnimId : null);
-            final Integer interval = effectiveInterval(block, selectedAnim);
-            final AttackTracker t = trackers.get(n.getIndex());
-
-            int left = -1;
-            if (interval != null && t != null) left = t.ticksUntilNext(now, interval);
-
-            final Integer lastTick = lastAnimTickByNpc.get(n.getIndex());
-            if (lastTick == null) left = -1;
-            else if (interval != null && now - lastTick > interval * 2) left = -1;
-
-            if (left == 0) left = 1;
-            if (config.countdownStyle() && left > 0) left = Math.max(1, left - 1);
-
-            out.add(new View(n, left, ek.key));
-        }
+    public List<View> views() { return snapshot().asList(); }
 
-        out.sort(Comparator.comparingInt(a -> a.npc.getIndex()));
-        return out;
-    }
-
-    // Compute interval from block + per-anim overrides
-    private Integer effectiveInterval(DbModels.StyleBlock b, Integer animId)
-    {
-        if (b == null) return null;
-        int base = (b.ticks != null ? b.ticks : 4);
-        int off  = (b.offset != null ? b.offset : 0);
-        if (animId != null && b.perAnim != null)
-        {
-            DbModels.StyleAnimSettings s = b.perAnim.get(animId);
-            if (s != null) { if (s.ticks != null) base = s.ticks; if (s.offset != null) off = s.offset; }
-        }
-        int eff = base + off;
-        if (eff < 1) eff = 1; if (eff > 15) eff = 15;
-        return eff;
-    }
-
-    private DbModels.PhaseProfile phaseFor(NPC n, DbModels.NpcProfile prof)
-    {
-        final String pk = activePhaseByNpc.get(n.getIndex());
-        if (pk != null)
-        {
-            final DbModels.PhaseProfile ph = prof.phases.get(pk);
-            if (ph != null) return ph;
-            activePhaseByNpc.remove(n.getIndex());
-        }
-        return prof.base;
-    }
-
-    private DbModels.StyleBlock selectStyleBlockForNpc(NPC n, DbModels.PhaseProfile ph, DbModels.NpcProfile prof)
+    // ----- Config -----
+    @Subscribe public void onConfigChanged(ConfigChanged e)
     {
-        if (ph == null || prof == null) return null;
-
-        // choose by last anim style
-        final Integer lastAnim = lastAnimByNpc.get(n.getIndex());
-        if (lastAnim != null)
-        {
-            final Map<Integer, DbModels.RecRow> recs = db.getRecsFor(prof.key);
-            final DbModels.RecRow rr = recs.get(lastAnim);
-            if (rr != null)
-            {
-                if (rr.type == DbModels.AnimUiType.CHARGEUP) return ph.chargeup;
-                if (rr.style == DbModels.Style.RANGED) return ph.ranged;
-                if (rr.style == DbModels.Style.MAGIC)  return ph.magic;
-                if (rr.style == DbModels.Style.MELEE)  return ph.melee;
-            }
-        }
-        // fallback preference
-        if (ph.melee.defaultAnimId != null)  return ph.melee;
-        if (ph.ranged.defaultAnimId != null) return ph.ranged;
-        if (ph.magic.defaultAnimId != null)  return ph.magic;
-        if (ph.chargeup.defaultAnimId != null) return ph.chargeup;
-        return ph.melee;
+        // The group also holds other writes (DB persistence); only a settings item rebuilds the snapshot
+        if (!AttackCycleSettings.GROUP.equals(e.getGroup()) || !AttackCycleSettings.isSettingKey(e.getKey())) return;
+        settings = AttackCycleSettings.from(config);
+        if (engine == null) return;
+        engine.setSettings(settings);
+        queueSnapshotRefresh(); // countdown style applies at publish time
     }
 
-    // ----- Events -----
+    // ----- Events (recorded, then handed to the engine) -----
     @Subscribe public void onGameTick(GameTick e)
     {
-        final Player me = client.getLocalPlayer();
-        if (me == null) return;
         final int now = client.getTickCount();
+        recorder.gameTick(now);
+        engine.onGameTick(client.getLocalPlayer(), now);
 
-        for (NPC n : client.getNpcs())
-        {
-            if (n == null) continue;
-            if (!isRelevant(n, me)) continue;
-            final AttackTracker t = trackers.get(n.getIndex());
-            if (t == null) continue;
-
-            final DbModels.EntityKey ek = DbModels.EntityKey.of(n.getName(), n.getCombatLevel());
-            final DbModels.NpcProfile prof = db.getProfileByKey(ek.key);
-            final DbModels.PhaseProfile ph = (prof == null) ? null : phaseFor(n, prof);
-            final DbModels.StyleBlock b = (prof == null) ? null : selectStyleBlockForNpc(n, ph, prof);
-            final Integer interval = effectiveInterval(b, (b != null ? b.defaultAnimId : null));
-            if (interval != null) t.autoAdvanceIfDue(now, interval);
-        }
+        final String debugLine = engine.takeDebugLine();
+        if (debugLine != null) client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", "[AC] " + debugLine, null);
+    }
 
-        if (debugEnabled && (!debugTickBuf.isEmpty() || debugSuppressed > 0))
-        {
-            String combined = String.join(" | ", debugTickBuf);
-            if (debugSuppressed > 0) combined += " … (+" + debugSuppressed + " more)";
-            client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", "[AC] " + combined, null);
-            debugTickBuf.clear(); debugSuppressed = 0;
-        }
+    @Subscribe public void onNpcSpawned(NpcSpawned e)
+    {
+        recorder.npcSpawned(e.getNpc(), client.getTickCount());
+        engine.onNpcSpawned(e.getNpc(), client.getLocalPlayer());
     }
 
-    @Subscribe public void onNpcSpawned(NpcSpawned e) { trackers.put(e.getNpc().getIndex(), new AttackTracker()); }
     @Subscribe public void onNpcDespawned(NpcDespawned e)
     {
-        final int idx = e.getNpc().getIndex();
-        trackers.remove(idx); activePhaseByNpc.remove(idx); lastAnimByNpc.remove(idx); lastAnimTickByNpc.remove(idx);
+        final int now = client.getTickCount();
+        recorder.npcDespawned(e.getNpc(), now);
+        engine.onNpcDespawned(e.getNpc());
+        if (engine.snapshotDirty()) queueSnapshotRefresh();
     }
 
     @Subscribe public void onInteractingChanged(InteractingChanged e)
     {
-        if (!(e.getSource() instanceof NPC)) return;
-        final NPC n = (NPC) e.getSource();
-        if (n.getInteracting() != client.getLocalPlayer())
-        {
-            final AttackTracker t = trackers.get(n.getIndex());
-            if (t != null) t.reset();
-        }
+        final Player me = client.getLocalPlayer();
+        final int now = client.getTickCount();
+        recorder.interactingChanged(e.getSource(), e.getTarget(), me, now);
+        engine.onInteractingChanged(e.getSource(), e.getTarget(), me, now);
+        if (engine.snapshotDirty()) queueSnapshotRefresh();
     }
 
     @Subscribe public void onAnimationChanged(AnimationChanged e)
     {
         if (!(e.getActor() instanceof NPC)) return;
         final NPC npc = (NPC) e.getActor();
-        if (!recordingEnabled) return;
-        if (!isRelevant(npc, client.getLocalPlayer())) return;
-
         final int anim = npc.getAnimation();
-        if (anim <= 0) return;
-
-        final DbModels.NpcProfile prof = db.getOrCreateProfileByNpc(npc);
-        final DbModels.PhaseProfile ph = phaseFor(npc, prof);
-
-        // Phase triggers
-        for (Map.Entry<String, DbModels.PhaseProfile> ent : prof.phases.entrySet())
-        {
-            final DbModels.PhaseProfile p = ent.getValue();
-            if (p.triggerAnimIds.contains(anim) || p.triggerNpcIds.contains(npc.getId()))
-            { activePhaseByNpc.put(npc.getIndex(), ent.getKey()); if (debugEnabled) debug("phase->" + ent.getKey() + " via anim " + anim); break; }
-        }
-
         final int now = client.getTickCount();
-        final DbModels.RecRow row = db.getOrCreateRec(prof.key, anim);
-
-        // per-animation gap: previous time we saw THIS anim
-        final int prevSeen = row.lastSeenTick;
-        row.seen++;
-        row.lastSeenTick = now;
-        db.putRec(prof.key, row);
-
-        if (row.type == DbModels.AnimUiType.ATTACK && prevSeen > 0)
-        {
-            final int gap = now - prevSeen;
-            if (gap > 0) { row.pushGap(gap); db.putRec(prof.key, row); if (debugEnabled) debug("ATTACK gap " + gap + "t for anim " + anim); }
-        }
-
-        lastAnimByNpc.put(npc.getIndex(), anim);
-        lastAnimTickByNpc.put(npc.getIndex(), now);
-
-        // If this anim equals selected style block anim, start a swing cycle for overlay
-        DbModels.StyleBlock b = null;
-        if (ph.melee.defaultAnimId != null && ph.melee.defaultAnimId == anim) b = ph.melee;
-        else if (ph.ranged.defaultAnimId != null && ph.ranged.defaultAnimId == anim) b = ph.ranged;
-        else if (ph.magic.defaultAnimId != null && ph.magic.defaultAnimId == anim) b = ph.magic;
-        else if (ph.chargeup.defaultAnimId != null && ph.chargeup.defaultAnimId == anim) b = ph.chargeup;
-
-        if (b != null) { trackers.computeIfAbsent(npc.getIndex(), i -> new AttackTracker()).noteAttackTickAndReturnGap(now); }
+        recorder.animationChanged(npc, anim, now);
+        engine.onAnimationChanged(npc, anim, client.getLocalPlayer(), now);
+        if (engine.snapshotDirty()) queueSnapshotRefresh();
     }
 
-    @Subscribe public void onProjectileMoved(ProjectileMoved e) { /* reserved */ }
-
-    @Subscribe public void onHitsplatApplied(HitsplatApplied e)
+    @Subscribe public void onProjectileMoved(ProjectileMoved e)
     {
-        if (e.getActor() != client.getLocalPlayer()) return;
-        if (!autoTagEnabled) return;
-
-        NPC src = null;
-        for (NPC n : client.getNpcs()) { if (n != null && n.getInteracting() == client.getLocalPlayer()) { src = n; break; } }
-        if (src == null) return;
-
-        final Integer lastAnim = lastAnimByNpc.get(src.getIndex());
-        final Integer atkTick  = lastAnimTickByNpc.get(src.getIndex());
-        if (lastAnim == null || atkTick == null) return;
-
+        final Projectile p = e.getProjectile();
+        final Player me = client.getLocalPlayer();
         final int now = client.getTickCount();
-        final int delta = now - atkTick;
-        if (delta < 0 || delta > autoTagWindow) return;
-
-        final DbModels.NpcProfile prof = db.getOrCreateProfileByNpc(src);
-        final DbModels.RecRow r = db.getOrCreateRec(prof.key, lastAnim);
-
-        // Tag as ATTACK (hitsplats imply damage)
-        r.type = DbModels.AnimUiType.ATTACK;
-
-        // Gap sample (per-anim) from animation -> hitsplat
-        r.pushGap(delta);
-        db.putRec(prof.key, r);
-        if (debugEnabled) debug("Auto-tag anim " + lastAnim + " as ATTACK (" + delta + "t)");
-
-        // Optional: update selected style block’s per-anim ticks
-        if (autoUpdateProfile)
-        {
-            DbModels.StyleBlock bSel = null;
-            final Map<Integer, DbModels.RecRow> recs = db.getRecsFor(prof.key);
-            final DbModels.RecRow rr = recs.get(lastAnim);
-            if (rr != null)
-            {
-                if (rr.type == DbModels.AnimUiType.CHARGEUP) bSel = prof.base.chargeup;
-                else if (rr.style == DbModels.Style.MELEE)  bSel = prof.base.melee;
-                else if (rr.style == DbModels.Style.RANGED) bSel = prof.base.ranged;
-                else if (rr.style == DbModels.Style.MAGIC)  bSel = prof.base.magic;
-            }
-
-            if (bSel != null)
-            {
-                if (bSel.defaultAnimId == null) bSel.defaultAnimId = lastAnim;
-                DbModels.StyleAnimSettings st = bSel.perAnim.computeIfAbsent(lastAnim, k -> new DbModels.StyleAnimSettings());
-                final Integer est = r.liveEstTicksMedian();
-                if (est != null) st.ticks = est;
-                db.putProfile(prof);
-            }
-        }
-    }
-
-    // ----- Helpers -----
-    private boolean isRelevant(NPC n, Player me)
-    {
-        if (n == null || me == null) return false;
-        return (n.getInteracting() == me) || (me.getInteracting() == n);
+        final int cycle = client.getGameCycle();
+        if (engine.onProjectileMoved(p, me, now, cycle)) recorder.projectile(p, me, now, cycle);
     }
 
-    private void debug(String msg)
+    @Subscribe public void onHitsplatApplied(HitsplatApplied e)
     {
-        if (!debugEnabled) return;
-        if (debugTickBuf.size() < 8) debugTickBuf.add(msg); else debugSuppressed++;
+        final Player me = client.getLocalPlayer();
+        final int now = client.getTickCount();
+        recorder.hitsplat(e.getActor(), e.getHitsplat().getAmount(), me, now);
+        if (e.getActor() == me) engine.onHitsplatOnMe(me, now);
     }
 
+    // ----- Helpers -----
     /** Load toolbar icon safely; fallback badge if missing. */
     private BufferedImage resolveIcon()
     {
@@ -0,0 +1,82 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.awt.Color;
+
+/**
+ * Immutable copy of AttackCycleConfig. The injected config is a proxy that resolves every call
+ * through ConfigManager, so it is read here once per change instead of per frame / per NPC.
+ *
+ * - Rebuilt by the plugin on ConfigChanged for one of the keys read here ({@link #isSettingKey});
+ *   published through a volatile field.
+ * - Values are sanitized once: a missing/broken value falls back to its default, the font size is
+ *   clamped to what the overhead atlas supports, the render budgets to their config ranges.
+ */
+final class AttackCycleSettings
+{
+    static final String GROUP = "attackcycle";
+    static final int MIN_FONT_SIZE = 10;
+    static final int MAX_FONT_SIZE = 28;
+    static final int MAX_OVERHEAD_TIMERS = 50;
+    static final int MAX_HUD_ROWS = 20;
+
+    /** The config defaults (headless harnesses, and before startUp). */
+    static final AttackCycleSettings DEFAULTS = from(new AttackCycleConfig() {});
+
+    final boolean showOverheadTimer;
+    final Color overheadColor;
+    final int overheadFontSize;
+    final boolean showMiniHud;
+    final boolean countdownStyle;
+    final int maxOverheadTimers;
+    final int maxHudRows;
+
+    private AttackCycleSettings(boolean showOverheadTimer, Color overheadColor, int overheadFontSize,
+                                boolean showMiniHud, boolean countdownStyle, int maxOverheadTimers, int maxHudRows)
+    {
+        this.showOverheadTimer = showOverheadTimer;
+        this.overheadColor = overheadColor;
+        this.overheadFontSize = overheadFontSize;
+        this.showMiniHud = showMiniHud;
+        this.countdownStyle = countdownStyle;
+        this.maxOverheadTimers = maxOverheadTimers;
+        this.maxHudRows = maxHudRows;
+    }
+
+    /** True for the AttackCycleConfig items this snapshot is built from. */
+    static boolean isSettingKey(String key)
+    {
+        if (key == null) return false;
+        switch (key)
+        {
+            case "showOverheadTimer":
+            case "overheadColor":
+            case "overheadFontSize":
+            case "showMiniHud":
+            case "countdownStyle":
+            case "maxOverheadTimers":
+            case "maxHudRows":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static AttackCycleSettings from(AttackCycleConfig c)
+    {
+        boolean overhead = true, hud = true, countdown = false;
+        Color color = Color.WHITE;
+        int size = 14, timers = 12, rows = 8;
+        try { overhead = c.showOverheadTimer(); } catch (Throwable ignored) {}
+        try { final Color v = c.overheadColor(); if (v != null) color = v; } catch (Throwable ignored) {}
+        try { size = c.overheadFontSize(); } catch (Throwable ignored) {}
+        try { hud = c.showMiniHud(); } catch (Throwable ignored) {}
+        try { countdown = c.countdownStyle(); } catch (Throwable ignored) {}
+        try { timers = c.maxOverheadTimers(); } catch (Throwable ignored) {}
+        try { rows = c.maxHudRows(); } catch (Throwable ignored) {}
+
+        size = Math.max(MIN_FONT_SIZE, Math.min(MAX_FONT_SIZE, size));
+        timers = Math.max(1, Math.min(MAX_OVERHEAD_TIMERS, timers));
+        rows = Math.max(1, Math.min(MAX_HUD_ROWS, rows));
+        return new AttackCycleSettings(overhead, color, size, hud, countdown, timers, rows);
+    }
+}
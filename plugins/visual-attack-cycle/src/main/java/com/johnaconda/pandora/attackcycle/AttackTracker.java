@@ -6,8 +6,9 @@ package com.johnaconda.pandora.attackcycle;
  * Assumptions:
  * - All calls happen on the game thread (RuneLite event bus), so no extra locking.
  * - We don't persist anything here; DbService carries history. This is just runtime cadence.
+ * - State lives in NpcStateTable's lastAttackTick / lastGap columns; this class is only the logic.
  *
- * API:
+ * API (all take the table + the NPC's slot):
  *  - noteAttackTickAndReturnGap(now): mark an observed attack animation this tick; returns gap to previous swing, or -1.
  *  - ticksUntilNext(now, interval): how many ticks until the next expected swing based on the last observed swing.
  *  - autoAdvanceIfDue(now, interval): rolls internal phase forward if we've passed predicted swing(s).
@@ -15,17 +16,13 @@ package com.johnaconda.pandora.attackcycle;
  */
 final class AttackTracker
 {
-    /** Tick of the last observed attack animation for this NPC; -1 if none yet. */
-    private int lastAttackTick = -1;
-
-    /** Most recent observed gap between two attack animations (in ticks); -1 if unknown. */
-    private int lastGap = -1;
+    private AttackTracker() {}
 
     /** Hard reset (e.g., despawn, stops targeting us, phase swap). */
-    void reset()
+    static void reset(final NpcStateTable t, final int slot)
     {
-        lastAttackTick = -1;
-        lastGap = -1;
+        t.lastAttackTick[slot] = NpcStateTable.NONE;
+        t.lastGap[slot] = NpcStateTable.NONE;
     }
 
     /**
@@ -33,17 +30,18 @@ final class AttackTracker
      * @param nowTick current game tick
      * @return gap between this and the previous observed attack, or -1 if no previous.
      */
-    int noteAttackTickAndReturnGap(final int nowTick)
+    static int noteAttackTickAndReturnGap(final NpcStateTable t, final int slot, final int nowTick)
     {
         int gap = -1;
+        final int lastAttackTick = t.lastAttackTick[slot];
         if (lastAttackTick >= 0)
         {
             gap = nowTick - lastAttackTick;
             if (gap <= 0) gap = 1;       // guard against clock weirdness
             if (gap > 60) gap = 60;      // sanity cap; we don't care beyond this
-            lastGap = gap;
+            t.lastGap[slot] = gap;
         }
-        lastAttackTick = nowTick;
+        t.lastAttackTick[slot] = nowTick;
         return gap;
     }
 
@@ -51,8 +49,9 @@ final class AttackTracker
      * Returns ticks until the next expected swing given a nominal interval.
      * If we've never seen an attack, returns -1.
      */
-    int ticksUntilNext(final int nowTick, final int interval)
+    static int ticksUntilNext(final NpcStateTable t, final int slot, final int nowTick, final int interval)
     {
+        final int lastAttackTick = t.lastAttackTick[slot];
         if (lastAttackTick < 0) return -1;
         int next = lastAttackTick + Math.max(1, interval);
         // Ensure "next" is strictly in the future
@@ -69,8 +68,9 @@ final class AttackTracker
      * Rolls internal phase forward if we've passed one or more predicted swings.
      * This keeps cadence stable even if we didn't observe every animation frame.
      */
-    void autoAdvanceIfDue(final int nowTick, final int interval)
+    static void autoAdvanceIfDue(final NpcStateTable t, final int slot, final int nowTick, final int interval)
     {
+        final int lastAttackTick = t.lastAttackTick[slot];
         if (lastAttackTick < 0) return;
         final int iv = Math.max(1, interval);
         final int expected = lastAttackTick + iv;
@@ -78,7 +78,7 @@ final class AttackTracker
         {
             // Advance lastAttackTick by however many full intervals we've skipped
             int skipped = (nowTick - lastAttackTick) / iv;
-            if (skipped > 0) lastAttackTick += skipped * iv;
+            if (skipped > 0) t.lastAttackTick[slot] = lastAttackTick + skipped * iv;
         }
     }
 
@@ -86,8 +86,8 @@ final class AttackTracker
      * Last observed gap (ticks) between two attacks; -1 if unknown.
      * Useful as a heuristic when auto-tagging off a near-synchronous hitsplat.
      */
-    int candidateSpeed()
+    static int candidateSpeed(final NpcStateTable t, final int slot)
     {
-        return lastGap;
+        return t.lastGap[slot];
     }
 }
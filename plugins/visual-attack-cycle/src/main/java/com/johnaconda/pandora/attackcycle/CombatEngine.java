@@ -0,0 +1,429 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.Projectile;
+
+/**
+ * The plugin's combat logic, minus RuneLite plumbing: relevant-set upkeep, phase switching, swing
+ * cadence (AttackTracker), learning events and the overlay view model.
+ *
+ * - Inputs are the events AttackCyclePlugin receives, already unpacked (local player, tick count),
+ *   so the same code runs live and under CombatReplay.
+ * - Learning events go to a LearningQueue; whoever owns the consumer side is poked via onTickFlush
+ *   once per tick (the live plugin wakes AC-learn, replay applies the batch inline).
+ * - Client thread only (or the replay thread), except onDbChanged() and snapshot().
+ */
+final class CombatEngine
+{
+    /** Client cycles (20 ms frames) per game tick. */
+    static final int CYCLES_PER_TICK = 30;
+    /** A projectile is credited to an NPC that started an animation at most this many ticks earlier. */
+    private static final int PROJECTILE_ATTRIBUTION_TICKS = 2;
+
+    private final DbService db;
+    // config snapshot; swapped by the plugin on ConfigChanged
+    private volatile AttackCycleSettings settings;
+    private final LearningQueue learnQueue;
+    private final Runnable onTickFlush;
+
+    // npcIndex -> slot -> cadence/phase/lastAnim columns + relevant set
+    private final NpcStateTable npcs = new NpcStateTable();
+    // NPC the local player is currently interacting with
+    private NPC myTarget;
+    // profile key -> tables compiled from its current version
+    private final HashMap<String, CompiledProfile> compiled = new HashMap<>();
+    private volatile boolean compiledStale = false;
+    private long learnDropsReported = 0;
+    // projectiles already handled (ProjectileMoved repeats every frame)
+    private final ProjectileSet projectiles = new ProjectileSet(64);
+
+    // batch debug messages once per tick
+    private final ArrayList<String> debugTickBuf = new ArrayList<>();
+    private int debugSuppressed = 0;
+
+    // Panel toggles
+    volatile boolean recordingEnabled = true;
+    volatile boolean autoTagEnabled = true;
+    volatile int autoTagWindow = 2;
+    volatile boolean autoUpdateProfile = false;
+    volatile boolean debugEnabled = false;
+
+    // Overlay view model: rebuilt here, read lock-free by the overlays
+    private volatile ViewSnapshot snapshot = ViewSnapshot.EMPTY;
+    private long snapshotVersion = 0;
+    // set by events that change what the overlays show; published once per tick / coalesced refresh
+    private boolean snapshotDirty = false;
+
+    private static final Comparator<AttackCyclePlugin.View> BY_NPC_INDEX = Comparator.comparingInt(v -> v.npc.getIndex());
+
+    CombatEngine(DbService db, AttackCycleSettings settings, LearningQueue learnQueue, Runnable onTickFlush)
+    {
+        this.db = db;
+        this.settings = settings;
+        this.learnQueue = learnQueue;
+        this.onTickFlush = onTickFlush;
+    }
+
+    /** New config values; they show from the next published snapshot. */
+    void setSettings(AttackCycleSettings s) { settings = s; }
+
+    void copyToggles(CombatEngine o)
+    {
+        recordingEnabled = o.recordingEnabled; autoTagEnabled = o.autoTagEnabled; autoTagWindow = o.autoTagWindow;
+        autoUpdateProfile = o.autoUpdateProfile; debugEnabled = o.debugEnabled;
+    }
+
+    /** Current view model; safe to call from any thread. */
+    ViewSnapshot snapshot() { return snapshot; }
+
+    /** An event changed the view model since the last publish; the owner should publishSnapshot() soon. */
+    boolean snapshotDirty() { return snapshotDirty; }
+
+    void reset()
+    {
+        npcs.clear();
+        myTarget = null;
+        compiled.clear();
+        projectiles.clear();
+        learnDropsReported = 0;
+        snapshot = ViewSnapshot.EMPTY;
+        snapshotDirty = false;
+    }
+
+    /** Any thread. Profiles are republished on edit, so compiled() notices new versions by itself. */
+    void onDbChanged(DbService.Change change)
+    {
+        // only drop tables for profiles that went away
+        if (change == DbService.Change.DELETE || change == DbService.Change.RESET || change == DbService.Change.IMPORT) compiledStale = true;
+    }
+
+    // ----- Events -----
+    void onGameTick(Player me, int now)
+    {
+        // Last tick's recordings/tags: one learning batch
+        learnQueue.endTick();
+        onTickFlush.run();
+        if (me == null) return;
+
+        // Walk only the relevant set. Backwards, so dropping members that quietly stopped fighting
+        // (no InteractingChanged seen, e.g. across a hop) doesn't skip anyone.
+        for (int i = npcs.relevantCount() - 1; i >= 0; i--)
+        {
+            final int slot = npcs.relevantSlot(i);
+            final NPC n = npcs.npc[slot];
+            if (!isRelevant(n, me)) { npcs.unmarkRelevant(slot); continue; }
+
+            final String key = db.keyFor(n);
+            final DbModels.NpcProfile prof = db.getProfileByKey(key);
+            if (prof == null) continue;
+            final int interval = intervalFor(slot, compiled(prof));
+            if (interval != NpcStateTable.NONE) AttackTracker.autoAdvanceIfDue(npcs, slot, now, interval);
+        }
+
+        publishSnapshot(me, now);
+
+        if (debugEnabled && learnQueue.dropped() != learnDropsReported)
+        {
+            final long dropped = learnQueue.dropped();
+            debug("learning queue full: " + (dropped - learnDropsReported) + " events dropped (peak "
+                    + learnQueue.highWater() + "/" + learnQueue.capacity() + ")");
+            learnDropsReported = dropped;
+        }
+    }
+
+    void onNpcSpawned(NPC n, Player me)
+    {
+        // Already fighting us when it shows up (walked into view, transformed)
+        if (isRelevant(n, me)) npcs.markRelevant(npcs.claim(n));
+    }
+
+    void onNpcDespawned(NPC n)
+    {
+        npcs.release(n.getIndex());
+        if (myTarget == n) myTarget = null;
+        if (inSnapshot(n)) snapshotDirty = true;
+    }
+
+    void onInteractingChanged(Actor source, Actor target, Player me, int now)
+    {
+        if (me == null) return;
+
+        if (source == me)
+        {
+            // Our own target changed: the new one joins, the old one leaves unless it's still on us
+            final NPC old = myTarget;
+            myTarget = (target instanceof NPC) ? (NPC) target : null;
+            if (old == myTarget) return;
+            if (old != null && !isRelevant(old, me))
+            {
+                final int slot = npcs.slotOf(old.getIndex());
+                if (slot != NpcStateTable.NONE) npcs.unmarkRelevant(slot);
+            }
+            if (myTarget != null) npcs.markRelevant(npcs.claim(myTarget));
+            snapshotDirty = true;
+            return;
+        }
+
+        if (!(source instanceof NPC)) return;
+        final NPC n = (NPC) source;
+        final boolean relevant = isRelevant(n, me);
+        if (n.getInteracting() != me)
+        {
+            final int slot = npcs.slotOf(n.getIndex());
+            if (slot != NpcStateTable.NONE)
+            {
+                AttackTracker.reset(npcs, slot);
+                if (!relevant) npcs.unmarkRelevant(slot);
+            }
+        }
+        else npcs.markRelevant(npcs.claim(n));
+        if (relevant || inSnapshot(n)) snapshotDirty = true;
+    }
+
+    void onAnimationChanged(NPC npc, int anim, Player me, int now)
+    {
+        if (!recordingEnabled) return;
+        if (!isRelevant(npc, me)) return;
+        if (anim <= 0) return;
+
+        final int slot = npcs.claim(npc);
+        npcs.markRelevant(slot);
+
+        // Runtime side (phase triggers, swing start) from the published profile, if there is one yet;
+        // recording the sighting waits for the tick's batch
+        final DbModels.NpcProfile prof = db.getProfileByKey(db.keyFor(npc));
+        boolean swing = false;
+        if (prof != null)
+        {
+            final CompiledProfile cp = compiled(prof);
+            final int phaseOrd = phaseOrd(slot, cp);
+
+            // Phase triggers
+            final int ord = cp.triggeredPhase(anim, npc.getId());
+            if (ord != NpcStateTable.NONE)
+            {
+                npcs.phaseName[slot] = cp.phaseName(ord);
+                npcs.phase[slot] = ord;
+                npcs.phaseTables[slot] = cp;
+                if (debugEnabled) debug("phase->" + cp.phaseName(ord) + " via anim " + anim);
+            }
+
+            // If this anim equals selected style block anim, start a swing cycle for overlay
+            swing = cp.isSelectedAnim(phaseOrd, anim);
+        }
+        learnQueue.offerAnim(DbModels.EntityKey.of(npc.getName(), npc.getCombatLevel()), npc.getId(), anim, now);
+
+        npcs.lastAnim[slot] = anim;
+        npcs.lastAnimTick[slot] = now;
+        npcs.projLandTick[slot] = NpcStateTable.NONE;
+
+        if (swing) AttackTracker.noteAttackTickAndReturnGap(npcs, slot, now);
+        snapshotDirty = true;
+    }
+
+    /** A hitsplat landed on the local player. */
+    void onHitsplatOnMe(Player me, int now)
+    {
+        if (!autoTagEnabled) return;
+
+        // Attacker = first NPC in the relevant set that's targeting us
+        NPC src = null;
+        int slot = NpcStateTable.NONE;
+        for (int i = 0, n = npcs.relevantCount(); i < n; i++)
+        {
+            final int s = npcs.relevantSlot(i);
+            if (npcs.npc[s].getInteracting() == me) { src = npcs.npc[s]; slot = s; break; }
+        }
+        if (src == null) return;
+
+        final int lastAnim = npcs.lastAnim[slot];
+        final int atkTick  = npcs.lastAnimTick[slot];
+        if (lastAnim == NpcStateTable.NONE || atkTick == NpcStateTable.NONE) return;
+
+        // Projectile attacks land after their flight: the window opens when the projectile lands
+        final int delta = now - atkTick;
+        final int landTick = npcs.projLandTick[slot];
+        final int windowStart = (landTick == NpcStateTable.NONE) ? atkTick : Math.max(atkTick, landTick);
+        if (delta < 0 || now - windowStart > autoTagWindow) return;
+
+        // Tag as ATTACK + gap sample (per-anim) from animation -> hitsplat; optionally update the
+        // selected style block's per-anim ticks. Applied with the rest of the tick's batch.
+        learnQueue.offerHit(DbModels.EntityKey.of(src.getName(), src.getCombatLevel()), src.getId(), lastAnim, now, delta, autoUpdateProfile);
+        if (debugEnabled) debug("Auto-tag anim " + lastAnim + " as ATTACK (" + delta + "t)");
+    }
+
+    /**
+     * ProjectileMoved: fires every client frame for every projectile, so after the first sighting of
+     * a projectile this is one set lookup. A new projectile aimed at us is credited to the relevant
+     * NPC that launched it (see projectileSource); its flight time is learned for that NPC's last
+     * anim and widens the auto-tag window. Returns true on the first sighting (what CombatRecorder keeps).
+     */
+    boolean onProjectileMoved(Projectile p, Player me, int now, int cycle)
+    {
+        if (me == null || p.getInteracting() != me) return false;
+        if (!projectiles.add(p, p.getEndCycle(), cycle)) return false;
+        if (!recordingEnabled) return true;
+
+        final int slot = projectileSource(p, me, now);
+        if (slot == NpcStateTable.NONE) return true;
+
+        final int flight = ceilTicks(p.getEndCycle() - p.getStartCycle());
+        npcs.projLandTick[slot] = now + ceilTicks(p.getEndCycle() - cycle);
+        final NPC src = npcs.npc[slot];
+        learnQueue.offerProjectile(DbModels.EntityKey.of(src.getName(), src.getCombatLevel()), src.getId(), npcs.lastAnim[slot], now, flight);
+        if (debugEnabled) debug("projectile from anim " + npcs.lastAnim[slot] + " (" + flight + "t flight)");
+        return true;
+    }
+
+    /**
+     * Slot of the relevant NPC that launched p, if it animated within PROJECTILE_ATTRIBUTION_TICKS
+     * (the flight is learned for that anim), else NONE. The client's source actor is exact even when
+     * several NPCs attack on the same tick; only when it isn't reported is the projectile credited to
+     * the NPC aimed at us that animated most recently.
+     */
+    private int projectileSource(Projectile p, Player me, int now)
+    {
+        final Actor source = p.getSourceActor();
+        if (source instanceof NPC)
+        {
+            final int s = npcs.slotOf(((NPC) source).getIndex());
+            if (s == NpcStateTable.NONE || npcs.relevantPos[s] == NpcStateTable.NONE) return NpcStateTable.NONE;
+            final int t = npcs.lastAnimTick[s];
+            return (t == NpcStateTable.NONE || now - t > PROJECTILE_ATTRIBUTION_TICKS) ? NpcStateTable.NONE : s;
+        }
+        if (source != null) return NpcStateTable.NONE; // a player's projectile
+
+        int slot = NpcStateTable.NONE;
+        int bestTick = NpcStateTable.NONE;
+        for (int i = 0, n = npcs.relevantCount(); i < n; i++)
+        {
+            final int s = npcs.relevantSlot(i);
+            final int t = npcs.lastAnimTick[s];
+            if (t == NpcStateTable.NONE || now - t > PROJECTILE_ATTRIBUTION_TICKS || t <= bestTick) continue;
+            if (npcs.npc[s].getInteracting() != me) continue;
+            slot = s;
+            bestTick = t;
+        }
+        return slot;
+    }
+
+    // ----- View model -----
+    /**
+     * Recompute the view model and publish it. Once per tick (onGameTick) plus once per burst of
+     * events that dirtied it, never per event: a rebuild is O(N log N) and allocates N views.
+     */
+    void publishSnapshot(Player me, int now)
+    {
+        snapshotDirty = false;
+        if (me == null || db == null) { snapshot = ViewSnapshot.EMPTY; return; }
+
+        final int count = npcs.relevantCount();
+        if (count == 0) { snapshot = ViewSnapshot.EMPTY; return; }
+
+        final AttackCyclePlugin.View[] out = new AttackCyclePlugin.View[count];
+        final boolean countdownStyle = settings.countdownStyle;
+
+        for (int i = 0; i < count; i++)
+        {
+            final int slot = npcs.relevantSlot(i);
+            final NPC n = npcs.npc[slot];
+
+            final String key = db.keyFor(n);
+            final DbModels.NpcProfile prof = db.getProfileByKey(key);
+            final int interval = (prof == null) ? NpcStateTable.NONE : intervalFor(slot, compiled(prof));
+
+            int left = -1;
+            if (interval != NpcStateTable.NONE) left = AttackTracker.ticksUntilNext(npcs, slot, now, interval);
+
+            final int lastTick = npcs.lastAnimTick[slot];
+            if (lastTick == NpcStateTable.NONE) left = -1;
+            else if (interval != NpcStateTable.NONE && now - lastTick > interval * 2) left = -1;
+
+            if (left == 0) left = 1;
+            if (countdownStyle && left > 0) left = Math.max(1, left - 1);
+
+            out[i] = new AttackCyclePlugin.View(n, left, key);
+        }
+
+        Arrays.sort(out, BY_NPC_INDEX);
+        snapshot = new ViewSnapshot(now, ++snapshotVersion, out);
+    }
+
+    /** This tick's debug lines joined for one chat message, or null; clears the buffer. */
+    String takeDebugLine()
+    {
+        if (!debugEnabled || (debugTickBuf.isEmpty() && debugSuppressed == 0)) return null;
+        String combined = String.join(" | ", debugTickBuf);
+        if (debugSuppressed > 0) combined += " … (+" + debugSuppressed + " more)";
+        debugTickBuf.clear(); debugSuppressed = 0;
+        return combined;
+    }
+
+    // ----- Helpers -----
+    /** Tables for the profile's current version (and its recordings'), compiled on first use after either changes. */
+    private CompiledProfile compiled(DbModels.NpcProfile prof)
+    {
+        if (compiledStale) { compiledStale = false; compiled.clear(); }
+        final Map<Integer, DbModels.RecRow> rows = db.getRecsFor(prof.key);
+        CompiledProfile c = compiled.get(prof.key);
+        if (c != null && c.source == prof && c.rows == rows) return c;
+        c = CompiledProfile.compile(prof, rows);
+        compiled.put(prof.key, c);
+        return c;
+    }
+
+    /**
+     * Slot's phase ordinal in cp. The phase is kept by name and resolved once per compiled version;
+     * if that version no longer has it (removed, renamed), the NPC falls back to base.
+     */
+    private int phaseOrd(int slot, CompiledProfile cp)
+    {
+        if (npcs.phaseTables[slot] == cp) return npcs.phase[slot];
+        int ord = cp.phaseOrdinal(npcs.phaseName[slot]);
+        if (ord == NpcStateTable.NONE)
+        {
+            ord = NpcStateTable.PHASE_BASE;
+            npcs.phaseName[slot] = null;
+        }
+        npcs.phase[slot] = ord;
+        npcs.phaseTables[slot] = cp;
+        return ord;
+    }
+
+    /** Countdown interval for the NPC in this slot (style block picked by its last anim), or NONE. */
+    private int intervalFor(int slot, CompiledProfile cp)
+    {
+        return cp.interval(phaseOrd(slot, cp), npcs.lastAnim[slot]);
+    }
+
+    // cycles -> whole ticks, rounded up; 1..GapWindow.MAX_VALUE
+    private static int ceilTicks(int cycles)
+    {
+        return Math.max(1, Math.min(GapWindow.MAX_VALUE, (cycles + CYCLES_PER_TICK - 1) / CYCLES_PER_TICK));
+    }
+
+    private static boolean isRelevant(NPC n, Player me)
+    {
+        if (n == null || me == null) return false;
+        return (n.getInteracting() == me) || (me.getInteracting() == n);
+    }
+
+    private boolean inSnapshot(NPC n)
+    {
+        for (AttackCyclePlugin.View v : snapshot.views) if (v.npc == n) return true;
+        return false;
+    }
+
+    private void debug(String msg)
+    {
+        if (!debugEnabled) return;
+        if (debugTickBuf.size() < 8) debugTickBuf.add(msg); else debugSuppressed++;
+    }
+}
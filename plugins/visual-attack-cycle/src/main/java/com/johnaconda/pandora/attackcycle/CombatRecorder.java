@@ -0,0 +1,228 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.Projectile;
+
+/**
+ * Flight recorder for the raw events AttackCyclePlugin sees (GameTick, NpcSpawned/Despawned,
+ * InteractingChanged, AnimationChanged, HitsplatApplied, first sightings of ProjectileMoved), so a fight can be replayed offline
+ * (see CombatReplay under src/test).
+ *
+ * - Always on: a fixed ring of primitive columns, overwriting the oldest events. Recording is a few
+ *   array stores; names go through a small string table (allocates only for a never-seen name).
+ * - Every NPC-related event carries the NPC's index, composition id, level and name ref, so any
+ *   suffix of the ring replays on its own.
+ * - Actors other than NPCs are coded: ACTOR_ME (local player), ACTOR_OTHER, ACTOR_NONE.
+ * - snapshot() copies the ring (client thread); the copy is written to a file anywhere.
+ * - Client thread only.
+ *
+ * File ("ACRP", version 2): header, varint name count + inline strings, varint event count, then per
+ * event: type byte, zigzag tick delta, zigzag npc/npcId/level/name/arg0/arg1/arg2. Captures are
+ * dev artifacts: other versions are rejected, not converted.
+ */
+final class CombatRecorder
+{
+    static final byte TICK = 1;
+    static final byte SPAWN = 2;
+    static final byte DESPAWN = 3;
+    /** npc* = the NPC side (source, else target); arg0/arg1 = source/target actor codes. */
+    static final byte INTERACT = 4;
+    /** arg0 = anim id. */
+    static final byte ANIM = 5;
+    /** arg0 = target actor code, arg1 = amount; npc* = target NPC if any. */
+    static final byte HIT = 6;
+    /** arg0 = target actor code, arg1 = flight cycles (end - start), arg2 = cycles until it lands; npc* = source NPC if reported. */
+    static final byte PROJECTILE = 7;
+
+    /** Actor codes (NPC index when >= 0). */
+    static final int ACTOR_NONE = -1;
+    static final int ACTOR_ME = -2;
+    static final int ACTOR_OTHER = -3;
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final byte[] MAGIC = { 'A', 'C', 'R', 'P' };
+    private static final int FORMAT = 2;
+    private static final int MAX_READ = 1 << 24; // sanity cap on counts read from a file
+
+    private final int mask;
+    private final byte[] type;
+    private final int[] tick, npc, npcId, level, name, arg0, arg1, arg2;
+    private long written = 0;
+
+    private final List<String> names = new ArrayList<>();
+    private final HashMap<String, Integer> nameRefs = new HashMap<>();
+
+    CombatRecorder(int capacity)
+    {
+        int cap = 2;
+        while (cap < capacity) cap <<= 1;
+        mask = cap - 1;
+        type = new byte[cap];
+        tick = new int[cap]; npc = new int[cap]; npcId = new int[cap]; level = new int[cap];
+        name = new int[cap]; arg0 = new int[cap]; arg1 = new int[cap]; arg2 = new int[cap];
+    }
+
+    // ---- recording ----
+    void gameTick(int now) { put(TICK, now, null, 0, 0, 0); }
+
+    void npcSpawned(NPC n, int now) { put(SPAWN, now, n, 0, 0, 0); }
+
+    void npcDespawned(NPC n, int now) { put(DESPAWN, now, n, 0, 0, 0); }
+
+    void interactingChanged(Actor source, Actor target, Player me, int now)
+    {
+        final NPC side = (source instanceof NPC) ? (NPC) source : (target instanceof NPC) ? (NPC) target : null;
+        put(INTERACT, now, side, actorCode(source, me), actorCode(target, me), 0);
+    }
+
+    void animationChanged(NPC n, int anim, int now) { put(ANIM, now, n, anim, 0, 0); }
+
+    void hitsplat(Actor target, int amount, Player me, int now)
+    {
+        put(HIT, now, (target instanceof NPC) ? (NPC) target : null, actorCode(target, me), amount, 0);
+    }
+
+    /** First sighting of a projectile (CombatEngine.onProjectileMoved returned true). */
+    void projectile(Projectile p, Player me, int now, int cycle)
+    {
+        final Actor source = p.getSourceActor();
+        put(PROJECTILE, now, (source instanceof NPC) ? (NPC) source : null,
+            actorCode(p.getInteracting(), me), p.getEndCycle() - p.getStartCycle(), p.getEndCycle() - cycle);
+    }
+
+    /** Events currently held (at most the capacity). */
+    int size() { return (int) Math.min(written, mask + 1); }
+
+    private void put(byte t, int now, NPC n, int a0, int a1, int a2)
+    {
+        final int i = (int) written & mask;
+        type[i] = t;
+        tick[i] = now;
+        if (n != null)
+        {
+            npc[i] = n.getIndex(); npcId[i] = n.getId(); level[i] = n.getCombatLevel(); name[i] = nameRef(n.getName());
+        }
+        else
+        {
+            npc[i] = ACTOR_NONE; npcId[i] = 0; level[i] = 0; name[i] = 0;
+        }
+        arg0[i] = a0;
+        arg1[i] = a1;
+        arg2[i] = a2;
+        written++;
+    }
+
+    // 0 = null, else index + 1
+    private int nameRef(String s)
+    {
+        if (s == null) return 0;
+        final Integer ref = nameRefs.get(s);
+        if (ref != null) return ref;
+        names.add(s);
+        nameRefs.put(s, names.size());
+        return names.size();
+    }
+
+    private static int actorCode(Actor a, Player me)
+    {
+        if (a == null) return ACTOR_NONE;
+        if (a == me) return ACTOR_ME;
+        if (a instanceof NPC) return ((NPC) a).getIndex();
+        return ACTOR_OTHER;
+    }
+
+    /** Copy of everything held, oldest first. */
+    Capture snapshot()
+    {
+        final int n = size();
+        final Capture c = new Capture(n, names.toArray(new String[0]));
+        final long first = written - n;
+        for (int k = 0; k < n; k++)
+        {
+            final int i = (int) (first + k) & mask;
+            c.type[k] = type[i]; c.tick[k] = tick[i]; c.npc[k] = npc[i]; c.npcId[k] = npcId[i];
+            c.level[k] = level[i]; c.name[k] = name[i]; c.arg0[k] = arg0[i]; c.arg1[k] = arg1[i]; c.arg2[k] = arg2[i];
+        }
+        return c;
+    }
+
+    /** A recorded event sequence (same columns as the ring, oldest first); immutable once built. */
+    static final class Capture
+    {
+        final int size;
+        final String[] names;
+        final byte[] type;
+        final int[] tick, npc, npcId, level, name, arg0, arg1, arg2;
+
+        Capture(int size, String[] names)
+        {
+            this.size = size;
+            this.names = names;
+            type = new byte[size];
+            tick = new int[size]; npc = new int[size]; npcId = new int[size]; level = new int[size];
+            name = new int[size]; arg0 = new int[size]; arg1 = new int[size]; arg2 = new int[size];
+        }
+
+        /** Name for a ref from the name column, or null. */
+        String nameOf(int ref) { return (ref > 0 && ref <= names.length) ? names[ref - 1] : null; }
+
+        void write(OutputStream os) throws IOException
+        {
+            final BufferedOutputStream bo = new BufferedOutputStream(os, 1 << 16);
+            final DbCodec.Out out = new DbCodec.Out(bo);
+            bo.write(MAGIC);
+            out.varint(FORMAT);
+            out.varint(names.length);
+            for (String s : names) out.str(s);
+            out.varint(size);
+            int prevTick = 0;
+            for (int k = 0; k < size; k++)
+            {
+                bo.write(type[k]);
+                out.zigzag(tick[k] - prevTick);
+                prevTick = tick[k];
+                out.zigzag(npc[k]); out.zigzag(npcId[k]); out.zigzag(level[k]); out.zigzag(name[k]);
+                out.zigzag(arg0[k]); out.zigzag(arg1[k]); out.zigzag(arg2[k]);
+            }
+            bo.flush();
+        }
+
+        static Capture read(InputStream is) throws IOException
+        {
+            final DbCodec.In in = new DbCodec.In(new BufferedInputStream(is, 1 << 16), null);
+            if (!Arrays.equals(in.bytes(MAGIC.length), MAGIC)) throw new IOException("not an attack-cycle capture");
+            final int format = in.varint();
+            if (format != FORMAT) throw new IOException("unsupported capture format " + format);
+            final int nNames = in.varint();
+            if (nNames < 0 || nNames > MAX_READ) throw new IOException("bad name count " + nNames);
+            final String[] names = new String[nNames];
+            for (int i = 0; i < names.length; i++) names[i] = in.str();
+
+            final int size = in.varint();
+            if (size < 0 || size > MAX_READ) throw new IOException("bad event count " + size);
+            final Capture c = new Capture(size, names);
+            int prevTick = 0;
+            for (int k = 0; k < c.size; k++)
+            {
+                c.type[k] = (byte) in.u8();
+                c.tick[k] = prevTick + in.zigzag();
+                prevTick = c.tick[k];
+                c.npc[k] = in.zigzag(); c.npcId[k] = in.zigzag(); c.level[k] = in.zigzag(); c.name[k] = in.zigzag();
+                c.arg0[k] = in.zigzag(); c.arg1[k] = in.zigzag(); c.arg2[k] = in.zigzag();
+            }
+            return c;
+        }
+    }
+}
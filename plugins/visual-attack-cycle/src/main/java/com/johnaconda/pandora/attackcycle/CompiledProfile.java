@@ -0,0 +1,194 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Map;
+
+/**
+ * Read-only lookup tables flattened out of one published NpcProfile version.
+ *
+ * - Phase ordinals are local to one CompiledProfile: PHASE_BASE is the base phase, n > 0 the n-th
+ *   entry of NpcProfile.phases in insertion order. Live NPCs keep their phase by name and resolve it
+ *   with phaseOrdinal(), so a phase removed or reordered by a new version can't be mistaken for another.
+ * - Trigger index: anim id -> ordinal and NPC composition id -> ordinal, each holding the first
+ *   phase (in order) that lists the id, so a phase switch is one hash probe however many phases
+ *   and triggers the profile has.
+ * - Countdown tables: the recording rows' type/style tags as anim id -> style block, plus per phase
+ *   the fallback block and each block's effective interval (per-anim override of its selected anim
+ *   applied, clamped 1..15), so resolving a countdown is a probe and two array reads, no boxing.
+ * - Compiled from a published (immutable) profile + recordings map and tagged with both; a new
+ *   version of either means a new CompiledProfile. Client thread only.
+ */
+final class CompiledProfile
+{
+    private static final int BLOCK_MELEE = 0;
+    private static final int BLOCK_RANGED = 1;
+    private static final int BLOCK_MAGIC = 2;
+    private static final int BLOCK_CHARGEUP = 3;
+    private static final int BLOCKS = 4;
+
+    /** The published versions these tables were built from (identity-compared). */
+    final DbModels.NpcProfile source;
+    final Map<Integer, DbModels.RecRow> rows;
+
+    /** ordinal -> phase; [PHASE_BASE] is the base phase. */
+    private final DbModels.PhaseProfile[] phases;
+    /** ordinal -> phase name; [PHASE_BASE] is null. */
+    private final String[] phaseNames;
+
+    private final IntIntMap phaseByAnim;
+    private final IntIntMap phaseByNpcId;
+
+    /** anim id -> BLOCK_* from its recording row's tags; untagged anims are absent. */
+    private final IntIntMap blockByAnim;
+    /** ordinal -> block used when the last anim isn't tagged. */
+    private final int[] fallbackBlock;
+    /** [ordinal * BLOCKS + block] -> selected anim id / effective interval, NONE if unset. */
+    private final int[] blockAnim;
+    private final int[] interval;
+
+    private CompiledProfile(DbModels.NpcProfile source, Map<Integer, DbModels.RecRow> rows,
+                            DbModels.PhaseProfile[] phases, String[] phaseNames,
+                            IntIntMap phaseByAnim, IntIntMap phaseByNpcId)
+    {
+        this.source = source;
+        this.rows = rows;
+        this.phases = phases;
+        this.phaseNames = phaseNames;
+        this.phaseByAnim = phaseByAnim;
+        this.phaseByNpcId = phaseByNpcId;
+
+        this.blockByAnim = new IntIntMap(rows.size());
+        for (DbModels.RecRow r : rows.values())
+        {
+            if (r == null) continue;
+            final int b = blockForTags(r);
+            if (b != NpcStateTable.NONE) blockByAnim.put(r.animId, b);
+        }
+
+        final int n = phases.length;
+        this.fallbackBlock = new int[n];
+        this.blockAnim = new int[n * BLOCKS];
+        this.interval = new int[n * BLOCKS];
+        for (int ord = 0; ord < n; ord++)
+        {
+            final DbModels.PhaseProfile ph = phases[ord];
+            fallbackBlock[ord] = fallbackFor(ph);
+            for (int b = 0; b < BLOCKS; b++)
+            {
+                final DbModels.StyleBlock sb = (ph == null ? null : block(ph, b));
+                blockAnim[ord * BLOCKS + b] = (sb == null || sb.defaultAnimId == null) ? NpcStateTable.NONE : sb.defaultAnimId;
+                interval[ord * BLOCKS + b] = effectiveInterval(sb);
+            }
+        }
+    }
+
+    static CompiledProfile compile(DbModels.NpcProfile prof, Map<Integer, DbModels.RecRow> rows)
+    {
+        final int n = (prof.phases == null ? 0 : prof.phases.size());
+        final DbModels.PhaseProfile[] phases = new DbModels.PhaseProfile[n + 1];
+        final String[] names = new String[n + 1];
+        phases[NpcStateTable.PHASE_BASE] = (prof.base == null ? new DbModels.PhaseProfile() : prof.base);
+
+        final IntIntMap byAnim = new IntIntMap();
+        final IntIntMap byNpc = new IntIntMap();
+        int ord = NpcStateTable.PHASE_BASE;
+        if (n > 0) for (Map.Entry<String, DbModels.PhaseProfile> e : prof.phases.entrySet())
+        {
+            ord++;
+            final DbModels.PhaseProfile ph = e.getValue();
+            phases[ord] = ph;
+            names[ord] = e.getKey();
+            if (ph == null) continue;
+            if (ph.triggerAnimIds != null) for (Integer id : ph.triggerAnimIds) if (id != null) byAnim.putIfAbsent(id, ord);
+            if (ph.triggerNpcIds != null)  for (Integer id : ph.triggerNpcIds)  if (id != null) byNpc.putIfAbsent(id, ord);
+        }
+        return new CompiledProfile(prof, rows, phases, names, byAnim, byNpc);
+    }
+
+    /**
+     * Phase this animation (played by an NPC with this composition id) switches to, or NONE.
+     * When both ids trigger, the earlier phase wins, same as scanning phases in order.
+     */
+    int triggeredPhase(int animId, int npcId)
+    {
+        final int a = phaseByAnim.get(animId, NpcStateTable.NONE);
+        final int b = phaseByNpcId.get(npcId, NpcStateTable.NONE);
+        if (a == NpcStateTable.NONE) return b;
+        if (b == NpcStateTable.NONE) return a;
+        return Math.min(a, b);
+    }
+
+    /** Ordinal of the named phase (null = base), or NONE if this version has no such phase. */
+    int phaseOrdinal(String name)
+    {
+        if (name == null) return NpcStateTable.PHASE_BASE;
+        for (int ord = 1; ord < phaseNames.length; ord++) if (name.equals(phaseNames[ord])) return ord;
+        return NpcStateTable.NONE;
+    }
+
+    String phaseName(int ord)
+    {
+        return (ord >= 0 && ord < phaseNames.length) ? phaseNames[ord] : null;
+    }
+
+    /** Countdown interval in phase ord after lastAnim (NONE if unknown): the block its tags pick, else the fallback. NONE if unset. */
+    int interval(int ord, int lastAnim)
+    {
+        int b = (lastAnim == NpcStateTable.NONE) ? NpcStateTable.NONE : blockByAnim.get(lastAnim, NpcStateTable.NONE);
+        if (b == NpcStateTable.NONE) b = fallbackBlock[ord];
+        return interval[ord * BLOCKS + b];
+    }
+
+    /** True if anim is the selected anim of one of the phase's style blocks (i.e. starts a swing). */
+    boolean isSelectedAnim(int ord, int anim)
+    {
+        final int base = ord * BLOCKS;
+        for (int b = 0; b < BLOCKS; b++) if (blockAnim[base + b] == anim) return true;
+        return false;
+    }
+
+    // ---- compile helpers ----
+    private static int blockForTags(DbModels.RecRow r)
+    {
+        if (r.type == DbModels.AnimUiType.CHARGEUP) return BLOCK_CHARGEUP;
+        if (r.style == DbModels.Style.RANGED) return BLOCK_RANGED;
+        if (r.style == DbModels.Style.MAGIC)  return BLOCK_MAGIC;
+        if (r.style == DbModels.Style.MELEE)  return BLOCK_MELEE;
+        return NpcStateTable.NONE;
+    }
+
+    private static DbModels.StyleBlock block(DbModels.PhaseProfile ph, int b)
+    {
+        switch (b)
+        {
+            case BLOCK_RANGED:   return ph.ranged;
+            case BLOCK_MAGIC:    return ph.magic;
+            case BLOCK_CHARGEUP: return ph.chargeup;
+            default:             return ph.melee;
+        }
+    }
+
+    // first block with a selected anim, in melee/ranged/magic/chargeup order; melee if none
+    private static int fallbackFor(DbModels.PhaseProfile ph)
+    {
+        if (ph != null) for (int b = 0; b < BLOCKS; b++)
+        {
+            final DbModels.StyleBlock sb = block(ph, b);
+            if (sb != null && sb.defaultAnimId != null) return b;
+        }
+        return BLOCK_MELEE;
+    }
+
+    // block defaults, overridden by the per-anim settings of its selected anim; clamped 1..15
+    private static int effectiveInterval(DbModels.StyleBlock b)
+    {
+        if (b == null) return NpcStateTable.NONE;
+        int base = (b.ticks != null ? b.ticks : 4);
+        int off  = (b.offset != null ? b.offset : 0);
+        if (b.defaultAnimId != null && b.perAnim != null)
+        {
+            final DbModels.StyleAnimSettings s = b.perAnim.get(b.defaultAnimId);
+            if (s != null) { if (s.ticks != null) base = s.ticks; if (s.offset != null) off = s.offset; }
+        }
+        return Math.max(1, Math.min(15, base + off));
+    }
+}
@@ -0,0 +1,417 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of Attack Cycle data (backup file + snapshots; JSON stays the interchange format).
+ *
+ * Shard payload (one NPC key; framed and indexed by DbStore, also the config shard value):
+ *   varint:nStrings { varint:len utf8 }*          -- dictionary: key, names, phase names
+ *   str:key  u8:flags (1 = has profile, 2 = tombstone)  [profile]  varint:nRows row*
+ *
+ * str = dictionary ref (index + 1) inside a shard, inline (utf8 length + 1) elsewhere; 0 = null.
+ * Ints are zigzag varints, counts/ids plain varints. Nullable Integer groups are prefixed by a presence
+ * bitmask. Gap windows are u8 count + u8 samples (samples are 1..60 by construction).
+ * Rows: the third slot of their Integer group is the gap histogram's bucket count (absent = none, as in
+ * older data), the fourth its decay stamp tick; the buckets follow the windows as u8 gap + varint weight
+ * in 1/64 samples.
+ */
+final class DbCodec
+{
+    static final byte[] MAGIC = { 'A', 'C', 'D', 'B' };
+
+    static final int SHARD_HAS_PROFILE = 1;
+    static final int SHARD_TOMBSTONE = 2;
+
+    private static final float HIST_WEIGHT_SCALE = 64f;
+
+    private DbCodec() {}
+
+    /** Format byte following our magic header, or -1 if the bytes aren't ours. */
+    static int formatOf(byte[] b)
+    {
+        if (b == null || b.length < MAGIC.length + 1) return -1;
+        for (int i = 0; i < MAGIC.length; i++) if (b[i] != MAGIC[i]) return -1;
+        return b[MAGIC.length] & 0xFF;
+    }
+
+    // ================= Shards =================
+    /** One NPC's profile (may be null) and recordings (may be null/empty) as a self-contained payload. */
+    static byte[] encodeShard(String key, DbModels.NpcProfile profile, Map<Integer, DbModels.RecRow> rows) throws IOException
+    {
+        final Map<String, Integer> dict = new LinkedHashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        final Out out = new Out(body, dict);
+        out.str(key);
+        body.write(profile != null ? SHARD_HAS_PROFILE : 0);
+        if (profile != null) writeProfile(out, profile);
+        final Map<Integer, DbModels.RecRow> byAnim = (rows != null ? rows : Collections.emptyMap());
+        out.varint(byAnim.size());
+        for (DbModels.RecRow r : byAnim.values()) writeRow(out, r);
+        return withDictionary(dict, body);
+    }
+
+    /** Marks a key as deleted (appended in place of its shard). */
+    static byte[] encodeTombstone(String key) throws IOException
+    {
+        final Map<String, Integer> dict = new LinkedHashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+        new Out(body, dict).str(key);
+        body.write(SHARD_TOMBSTONE);
+        return withDictionary(dict, body);
+    }
+
+    // Dictionary (strings in ref order), then the body that refers to it
+    private static byte[] withDictionary(Map<String, Integer> dict, ByteArrayOutputStream body) throws IOException
+    {
+        final ByteArrayOutputStream bo = new ByteArrayOutputStream(body.size() + 16 * dict.size() + 1);
+        final Out out = new Out(bo);
+        out.varint(dict.size());
+        for (String s : dict.keySet())
+        {
+            final byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            out.varint(utf.length);
+            bo.write(utf);
+        }
+        body.writeTo(bo);
+        return bo.toByteArray();
+    }
+
+    /** Decoded shard; profile/rows are fresh objects owned by the caller. */
+    static final class Shard
+    {
+        String key;
+        boolean tombstone;
+        DbModels.NpcProfile profile;
+        final Map<Integer, DbModels.RecRow> rows = new HashMap<>();
+    }
+
+    static Shard decodeShard(byte[] payload) throws IOException
+    {
+        final ByteArrayInputStream bi = new ByteArrayInputStream(payload);
+        final In head = new In(bi, null);
+        final int nStrings = head.varint();
+        if (nStrings > payload.length) throw new IOException("bad dictionary size " + nStrings);
+        final String[] dict = new String[nStrings];
+        for (int i = 0; i < nStrings; i++) dict[i] = new String(head.bytes(head.varint()), StandardCharsets.UTF_8);
+
+        final In in = new In(bi, dict);
+        final Shard s = new Shard();
+        s.key = in.str();
+        final int flags = in.u8();
+        if ((flags & SHARD_TOMBSTONE) != 0) { s.tombstone = true; return s; }
+        if ((flags & SHARD_HAS_PROFILE) != 0) s.profile = readProfile(in);
+        final int n = in.varint();
+        for (int j = 0; j < n; j++)
+        {
+            final DbModels.RecRow r = readRow(in);
+            s.rows.put(r.animId, r);
+        }
+        return s;
+    }
+
+    static void writeProfile(Out out, DbModels.NpcProfile p) throws IOException
+    {
+        out.str(p.key);
+        out.str(p.name);
+        out.zigzag(p.level);
+        out.ids(p.variantIds);
+        writePhase(out, p.base != null ? p.base : new DbModels.PhaseProfile());
+        final Map<String, DbModels.PhaseProfile> phases = (p.phases != null ? p.phases : Collections.emptyMap());
+        out.varint(phases.size());
+        for (Map.Entry<String, DbModels.PhaseProfile> e : phases.entrySet())
+        {
+            out.str(e.getKey());
+            writePhase(out, e.getValue() != null ? e.getValue() : new DbModels.PhaseProfile());
+        }
+    }
+
+    private static void writePhase(Out out, DbModels.PhaseProfile ph) throws IOException
+    {
+        writeBlock(out, ph.melee);
+        writeBlock(out, ph.ranged);
+        writeBlock(out, ph.magic);
+        writeBlock(out, ph.chargeup);
+        out.ids(ph.triggerAnimIds);
+        out.ids(ph.triggerNpcIds);
+    }
+
+    private static void writeBlock(Out out, DbModels.StyleBlock b) throws IOException
+    {
+        if (b == null) b = new DbModels.StyleBlock();
+        out.optInts(b.defaultAnimId, b.ticks, b.offset, b.projSpeed);
+        final Map<Integer, DbModels.StyleAnimSettings> perAnim = (b.perAnim != null ? b.perAnim : Collections.emptyMap());
+        out.varint(perAnim.size());
+        for (Map.Entry<Integer, DbModels.StyleAnimSettings> e : perAnim.entrySet())
+        {
+            final DbModels.StyleAnimSettings s = e.getValue();
+            out.zigzag(e.getKey());
+            if (s == null) out.optInts(null, null, null, null);
+            else out.optInts(s.ticks, s.offset, s.projSpeed, null);
+        }
+    }
+
+    static void writeRow(Out out, DbModels.RecRow r) throws IOException
+    {
+        out.zigzag(r.animId);
+        out.os.write(r.type != null ? r.type.ordinal() : 0);
+        out.os.write(r.style != null ? r.style.ordinal() : 0);
+        out.varint(Math.max(0, r.seen));
+        out.zigzag(r.lastSeenTick);
+        final int buckets = histBuckets(r.gapHist);
+        final Integer stamp = (buckets > 0 && r.gapHist.stamp() >= 0) ? r.gapHist.stamp() : null;
+        out.optInts(r.estTicksUser, r.estProjSpeedUser, buckets > 0 ? buckets : null, stamp);
+        out.window(r.gapsRecent);
+        out.window(r.projSpdRecent);
+        if (buckets > 0) for (int g = 1; g <= GapWindow.MAX_VALUE; g++)
+        {
+            final int q = histWeight(r.gapHist, g);
+            if (q == 0) continue;
+            out.os.write(g);
+            out.varint(q);
+        }
+    }
+
+    private static int histBuckets(GapHistogram h)
+    {
+        if (h == null || h.isEmpty()) return 0;
+        int n = 0;
+        for (int g = 1; g <= GapWindow.MAX_VALUE; g++) if (histWeight(h, g) > 0) n++;
+        return n;
+    }
+
+    private static int histWeight(GapHistogram h, int gap) { return Math.round(h.weightOf(gap) * HIST_WEIGHT_SCALE); }
+
+    static DbModels.NpcProfile readProfile(In in) throws IOException
+    {
+        final DbModels.NpcProfile p = new DbModels.NpcProfile();
+        p.key = in.str();
+        p.name = in.str();
+        p.level = in.zigzag();
+        in.ids(p.variantIds);
+        p.base = readPhase(in);
+        final int nPhases = in.varint();
+        for (int i = 0; i < nPhases; i++)
+        {
+            final String name = in.str();
+            final DbModels.PhaseProfile ph = readPhase(in);
+            if (name != null) p.phases.put(name, ph);
+        }
+        return p;
+    }
+
+    private static DbModels.PhaseProfile readPhase(In in) throws IOException
+    {
+        final DbModels.PhaseProfile ph = new DbModels.PhaseProfile();
+        ph.melee = readBlock(in);
+        ph.ranged = readBlock(in);
+        ph.magic = readBlock(in);
+        ph.chargeup = readBlock(in);
+        in.ids(ph.triggerAnimIds);
+        in.ids(ph.triggerNpcIds);
+        return ph;
+    }
+
+    private static DbModels.StyleBlock readBlock(In in) throws IOException
+    {
+        final DbModels.StyleBlock b = new DbModels.StyleBlock();
+        final Integer[] v = in.optInts();
+        b.defaultAnimId = v[0]; b.ticks = v[1]; b.offset = v[2]; b.projSpeed = v[3];
+        final int n = in.varint();
+        for (int i = 0; i < n; i++)
+        {
+            final int anim = in.zigzag();
+            final Integer[] s = in.optInts();
+            final DbModels.StyleAnimSettings st = new DbModels.StyleAnimSettings();
+            st.ticks = s[0]; st.offset = s[1]; st.projSpeed = s[2];
+            b.perAnim.put(anim, st);
+        }
+        return b;
+    }
+
+    static DbModels.RecRow readRow(In in) throws IOException
+    {
+        final DbModels.RecRow r = new DbModels.RecRow();
+        r.animId = in.zigzag();
+        r.type = enumAt(DbModels.AnimUiType.values(), in.u8());
+        r.style = enumAt(DbModels.Style.values(), in.u8());
+        r.seen = in.varint();
+        r.lastSeenTick = in.zigzag();
+        final Integer[] u = in.optInts();
+        r.estTicksUser = u[0]; r.estProjSpeedUser = u[1];
+        in.window(r.gapsRecent);
+        in.window(r.projSpdRecent);
+        final int buckets = (u[2] == null ? 0 : u[2]);
+        for (int i = 0; i < buckets; i++)
+        {
+            final int g = in.u8();
+            r.gapHist.setWeight(g, in.varint() / HIST_WEIGHT_SCALE);
+        }
+        if (u[3] != null) r.gapHist.setStamp(u[3]);
+        return r;
+    }
+
+    private static <E> E enumAt(E[] values, int ordinal)
+    {
+        return (ordinal >= 0 && ordinal < values.length) ? values[ordinal] : values[0];
+    }
+
+    // ================= Primitives =================
+    static final class Out
+    {
+        final OutputStream os;
+        private final Map<String, Integer> dict; // shard dictionary (string -> ref), filled as strings come; null = inline
+        Out(OutputStream os) { this(os, null); }
+        Out(OutputStream os, Map<String, Integer> dict) { this.os = os; this.dict = dict; }
+
+        void varint(int v) throws IOException
+        {
+            while ((v & ~0x7F) != 0) { os.write((v & 0x7F) | 0x80); v >>>= 7; }
+            os.write(v);
+        }
+
+        void varlong(long v) throws IOException
+        {
+            while ((v & ~0x7FL) != 0) { os.write((int) (v & 0x7F) | 0x80); v >>>= 7; }
+            os.write((int) v);
+        }
+
+        void zigzag(int v) throws IOException { varint((v << 1) ^ (v >> 31)); }
+
+        /** Dictionary ref, or inline string: utf8 length + 1 (0 = null), then the bytes. */
+        void str(String s) throws IOException
+        {
+            if (s == null) { varint(0); return; }
+            if (dict != null)
+            {
+                Integer ref = dict.get(s);
+                if (ref == null) { ref = dict.size() + 1; dict.put(s, ref); }
+                varint(ref);
+                return;
+            }
+            final byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            varint(utf.length + 1);
+            os.write(utf);
+        }
+
+        void ids(Collection<Integer> ids) throws IOException
+        {
+            if (ids == null) { varint(0); return; }
+            int n = 0;
+            for (Integer i : ids) if (i != null) n++;
+            varint(n);
+            for (Integer i : ids) if (i != null) zigzag(i);
+        }
+
+        /** Up to four nullable ints: presence bitmask, then the present values. */
+        void optInts(Integer a, Integer b, Integer c, Integer d) throws IOException
+        {
+            final int mask = (a != null ? 1 : 0) | (b != null ? 2 : 0) | (c != null ? 4 : 0) | (d != null ? 8 : 0);
+            os.write(mask);
+            if (a != null) zigzag(a);
+            if (b != null) zigzag(b);
+            if (c != null) zigzag(c);
+            if (d != null) zigzag(d);
+        }
+
+        void window(GapWindow w) throws IOException
+        {
+            final int n = (w == null ? 0 : w.size());
+            os.write(n);
+            for (int i = 0; i < n; i++) os.write(w.get(i));
+        }
+    }
+
+    static final class In
+    {
+        final InputStream is;
+        private final String[] dict; // shard dictionary; null = inline strings
+        In(InputStream is, String[] dict) { this.is = is; this.dict = dict; }
+
+        int u8() throws IOException
+        {
+            final int b = is.read();
+            if (b < 0) throw new EOFException();
+            return b;
+        }
+
+        byte[] bytes(int n) throws IOException
+        {
+            final byte[] b = new byte[n];
+            int off = 0;
+            while (off < n)
+            {
+                final int r = is.read(b, off, n - off);
+                if (r < 0) throw new EOFException();
+                off += r;
+            }
+            return b;
+        }
+
+        int varint() throws IOException
+        {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7)
+            {
+                final int b = u8();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("varint too long");
+        }
+
+        long varlong() throws IOException
+        {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7)
+            {
+                final int b = u8();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("varlong too long");
+        }
+
+        int zigzag() throws IOException
+        {
+            final int v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String str() throws IOException
+        {
+            final int ref = varint();
+            if (ref == 0) return null;
+            if (dict == null) return new String(bytes(ref - 1), StandardCharsets.UTF_8);
+            if (ref > dict.length) throw new IOException("bad string ref " + ref);
+            return dict[ref - 1];
+        }
+
+        void ids(Set<Integer> into) throws IOException
+        {
+            final int n = varint();
+            for (int i = 0; i < n; i++) into.add(zigzag());
+        }
+
+        Integer[] optInts() throws IOException
+        {
+            final int mask = u8();
+            final Integer[] v = new Integer[4];
+            for (int i = 0; i < 4; i++) if ((mask & (1 << i)) != 0) v[i] = zigzag();
+            return v;
+        }
+
+        void window(GapWindow w) throws IOException
+        {
+            final int n = u8();
+            for (int i = 0; i < n; i++) w.push(u8());
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.johnaconda.pandora.attackcycle;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-/** Lightweight POJOs for Attack Cycle. */
+/**
+ * Lightweight POJOs for Attack Cycle.
+ *
+ * Instances handed out by DbService readers are published versions and must be treated as
+ * read-only; edit a copy() and hand it back through the DbService writer.
+ */
 final class DbModels
 {
     private DbModels() {}
@@ -11,6 +17,8 @@ final class DbModels
     static final class AttackDb
     {
         int version = 2;
+        /** Last journal entry folded into this snapshot (see DbService); 0 for pre-journal data. */
+        long journalSeq = 0;
         Map<String, NpcProfile> profiles = new HashMap<>();
         Recording recording = new Recording();
     }
@@ -35,9 +43,31 @@ final class DbModels
             this.key = key;
         }
 
+        /** Interned keys by raw name, one per level seen; cleared wholesale if it ever grows past the cap. */
+        private static final ConcurrentHashMap<String, EntityKey[]> INTERNED = new ConcurrentHashMap<>();
+        private static final int MAX_INTERNED_NAMES = 4096;
+
+        /** Shared instance for (rawName, level); only the first lookup of a pair builds the key. */
         static EntityKey of(String rawName, int level)
         {
-            final String n = (rawName == null ? "" : rawName.trim());
+            final String raw = (rawName == null ? "" : rawName);
+            final EntityKey[] known = INTERNED.get(raw);
+            if (known != null) for (EntityKey k : known) if (k.level == level) return k;
+
+            final EntityKey k = build(raw, level);
+            if (INTERNED.size() >= MAX_INTERNED_NAMES) INTERNED.clear();
+            INTERNED.merge(raw, new EntityKey[] { k }, (a, b) -> {
+                for (EntityKey x : a) if (x.level == level) return a; // raced: keep theirs
+                final EntityKey[] c = Arrays.copyOf(a, a.length + 1);
+                c[a.length] = k;
+                return c;
+            });
+            return k;
+        }
+
+        private static EntityKey build(String rawName, int level)
+        {
+            final String n = rawName.trim();
             final String sane = sanitizeName(n);
             final String key = sane + "#" + level;
             return new EntityKey(n, level, key);
@@ -69,6 +99,36 @@ final class DbModels
         PhaseProfile base = new PhaseProfile();
         Map<String, PhaseProfile> phases = new LinkedHashMap<>();
 
+        NpcProfile copy()
+        {
+            NpcProfile c = new NpcProfile();
+            c.key = key; c.name = name; c.level = level;
+            c.variantIds = (variantIds == null ? new LinkedHashSet<>() : new LinkedHashSet<>(variantIds));
+            c.base = (base == null ? new PhaseProfile() : base.copy());
+            c.phases = new LinkedHashMap<>();
+            if (phases != null) for (Map.Entry<String, PhaseProfile> e : phases.entrySet()) c.phases.put(e.getKey(), e.getValue().copy());
+            return c;
+        }
+
+        @Override public String toString() { return (name == null ? "??" : name) + " · " + level; }
+    }
+
+    /** Listing entry (panel list/combos): what's in the store index, without materializing the profile. */
+    static final class ProfileSummary
+    {
+        final String key;
+        final String name;
+        final int level;
+        final Set<Integer> variantIds;
+
+        ProfileSummary(String key, String name, int level, Set<Integer> variantIds)
+        {
+            this.key = key; this.name = name; this.level = level;
+            this.variantIds = (variantIds == null ? Collections.emptySet() : variantIds);
+        }
+
+        static ProfileSummary of(NpcProfile p) { return new ProfileSummary(p.key, p.name, p.level, p.variantIds); }
+
         @Override public String toString() { return (name == null ? "??" : name) + " · " + level; }
     }
 
@@ -81,6 +141,16 @@ final class DbModels
 
         Set<Integer> triggerAnimIds = new LinkedHashSet<>();
         Set<Integer> triggerNpcIds  = new LinkedHashSet<>();
+
+        PhaseProfile copy()
+        {
+            PhaseProfile c = new PhaseProfile();
+            c.melee = StyleBlock.copyOf(melee); c.ranged = StyleBlock.copyOf(ranged);
+            c.magic = StyleBlock.copyOf(magic); c.chargeup = StyleBlock.copyOf(chargeup);
+            c.triggerAnimIds = (triggerAnimIds == null ? new LinkedHashSet<>() : new LinkedHashSet<>(triggerAnimIds));
+            c.triggerNpcIds  = (triggerNpcIds  == null ? new LinkedHashSet<>() : new LinkedHashSet<>(triggerNpcIds));
+            return c;
+        }
     }
 
     /** Style block with per-animation overrides. */
@@ -93,6 +163,16 @@ final class DbModels
 
         /** Per-animation overrides: if null, fall back to block defaults. */
         Map<Integer, StyleAnimSettings> perAnim = new LinkedHashMap<>();
+
+        static StyleBlock copyOf(StyleBlock b)
+        {
+            StyleBlock c = new StyleBlock();
+            if (b == null) return c;
+            c.defaultAnimId = b.defaultAnimId; c.ticks = b.ticks; c.offset = b.offset; c.projSpeed = b.projSpeed;
+            if (b.perAnim != null) for (Map.Entry<Integer, StyleAnimSettings> e : b.perAnim.entrySet())
+                c.perAnim.put(e.getKey(), e.getValue() == null ? new StyleAnimSettings() : e.getValue().copy());
+            return c;
+        }
     }
 
     static final class StyleAnimSettings
@@ -100,6 +180,13 @@ final class DbModels
         public Integer ticks;
         public Integer offset;
         public Integer projSpeed;
+
+        StyleAnimSettings copy()
+        {
+            StyleAnimSettings c = new StyleAnimSettings();
+            c.ticks = ticks; c.offset = offset; c.projSpeed = projSpeed;
+            return c;
+        }
     }
 
     // ================= Recording rows =================
@@ -121,49 +208,65 @@ final class DbModels
         Integer estTicksUser;       // user override
         Integer estProjSpeedUser;   // user override
 
-        ArrayDeque<Integer> gapsRecent = new ArrayDeque<>();
-        ArrayDeque<Integer> projSpdRecent = new ArrayDeque<>();
+        /** Last few gaps / projectile flight times; serialized as plain int arrays. */
+        GapWindow gapsRecent = new GapWindow();
+        GapWindow projSpdRecent = new GapWindow();
+        /** Every attack interval seen for this anim, decayed; persisted across sessions. */
+        GapHistogram gapHist = new GapHistogram();
 
-        private static final int MAX_RECENT_GAPS = 16;
-        private static final int MAX_RECENT_PROJ = 16;
+        RecRow copy()
+        {
+            RecRow c = new RecRow();
+            c.animId = animId; c.type = type; c.style = style;
+            c.seen = seen; c.lastSeenTick = lastSeenTick;
+            c.estTicksUser = estTicksUser; c.estProjSpeedUser = estProjSpeedUser;
+            c.gapsRecent = (gapsRecent == null ? new GapWindow() : gapsRecent.copy());
+            c.projSpdRecent = (projSpdRecent == null ? new GapWindow() : projSpdRecent.copy());
+            c.gapHist = (gapHist == null ? new GapHistogram() : gapHist.copy());
+            return c;
+        }
 
         void pushGap(int gapTicks)
         {
             if (gapTicks <= 0) return;
-            if (gapTicks > 60) gapTicks = 60;
-            gapsRecent.addLast(gapTicks);
-            while (gapsRecent.size() > MAX_RECENT_GAPS) gapsRecent.removeFirst();
+            gapsRecent.push(gapTicks); // clamps at 60
+        }
+
+        /** Attack interval (anim to the next sighting of it, at {@code tick}): recent window + long-horizon histogram. */
+        void pushInterval(int gapTicks, int tick)
+        {
+            pushGap(gapTicks);
+            if (gapHist == null) gapHist = new GapHistogram();
+            gapHist.add(gapTicks, tick);
         }
 
         void pushProj(int speed)
         {
             if (speed <= 0) return;
-            projSpdRecent.addLast(speed);
-            while (projSpdRecent.size() > MAX_RECENT_PROJ) projSpdRecent.removeFirst();
+            projSpdRecent.push(speed);
         }
 
         Integer liveEstTicksMedian()
         {
             if (estTicksUser != null) return estTicksUser;
-            if (gapsRecent.isEmpty()) return null;
-            int n = gapsRecent.size();
-            int[] arr = new int[n]; int i=0; for (int v : gapsRecent) arr[i++]=v;
-            Arrays.sort(arr);
-            int mid = n>>>1;
-            int val = (n%2==0) ? ((arr[mid-1]+arr[mid]) / 2) : arr[mid];
-            if (val < 1) val = 1; if (val > 15) val = 15;
-            return val;
+            final int val = gapsRecent.median();
+            if (val < 0) return null;
+            return Math.max(1, Math.min(15, val));
+        }
+
+        /** User override, else the histogram's estimate if it's confident; null otherwise (what auto-update may write). */
+        Integer confidentEstTicks()
+        {
+            if (estTicksUser != null) return estTicksUser;
+            if (gapHist == null || !gapHist.isConfident()) return null;
+            return Math.max(1, Math.min(15, gapHist.estimate()));
         }
 
         Integer liveProjSpeedMedian()
         {
             if (estProjSpeedUser != null) return estProjSpeedUser;
-            if (projSpdRecent.isEmpty()) return null;
-            int n = projSpdRecent.size();
-            int[] arr = new int[n]; int i=0; for (int v : projSpdRecent) arr[i++]=v;
-            Arrays.sort(arr);
-            int mid = n>>>1;
-            int val = (n%2==0) ? ((arr[mid-1]+arr[mid]) / 2) : arr[mid];
+            final int val = projSpdRecent.median();
+            if (val < 0) return null;
             return Math.max(1, Math.min(60, val));
         }
     }
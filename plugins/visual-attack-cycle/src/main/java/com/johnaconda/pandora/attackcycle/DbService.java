@@ -1,25 +1,77 @@
 package com.johnaconda.pandora.attackcycle;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import net.runelite.client.RuneLite;
 import net.runelite.client.config.ConfigManager;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.lang.reflect.Type;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
 
-/** Persistence for Attack Cycle. */
+/**
+ * Persistence for Attack Cycle.
+ *
+ * Concurrency model (MVCC-ish):
+ * - Profiles and per-NPC recording maps are published as immutable versions in concurrent maps.
+ * - Readers (client thread, overlays, EDT, AC-db) just load the current version: no monitor, no copies.
+ * - Writers are serialized on this object's monitor, build a fresh copy of what they change and
+ *   publish it with a single map put. Nobody ever mutates a published object.
+ * - Edits go through updateProfile()/updateRec(): the change runs on a copy of the current version
+ *   under the monitor, so it can never revert a concurrent write. putProfile()/putRec() publish whole
+ *   new versions.
+ *
+ * Durability:
+ * - Every mutation is also appended (write-behind, on AC-db) to a line-per-entry journal next to the
+ *   backup file, and marks its NPC key dirty. Past a size threshold the journal is folded into the backup.
+ * - Storage is sharded per NPC key (profile + recordings): the backup file gets the dirty shards
+ *   appended, and a config mirror in its own group (DB_GROUP, apart from the settings) holds one
+ *   "npc.<key>" entry per NPC, only dirty ones rewritten. Save cost follows the size of the edit,
+ *   not the size of the DB.
+ * - The mirror is all or nothing: past MAX_CONFIG_SHARDS profiles it is removed from config (the
+ *   file and journal remain) so profile sync never carries thousands of entries, and it is
+ *   rebuilt if the DB shrinks back under the cap. A partial mirror could not restore the file.
+ * - load() takes the newest snapshot (backup file or config shards) and replays journal entries on top,
+ *   so a client crash loses at most what was still queued on AC-db.
+ * - Full rewrites (reset, salvage, dead space outgrowing live data) stream to a temp file on AC-db and
+ *   are atomically moved over the backup. Callers never serialize.
+ * - JSON remains the interchange format: exportJson()/importJson(), the journal, and legacy data.
+ *
+ * Lazy loading:
+ * - The backup is a DbStore (one CRC-framed shard per NPC + key index). load() only reads the index;
+ *   an NPC's profile and recordings are decoded the first time anything asks for that key.
+ * - Listings use ProfileSummary straight from the index, so opening the panel materializes nothing.
+ * - Snapshots copy untouched shards byte-for-byte from the previous file instead of decoding them.
+ */
 final class DbService
 {
     private static final String GROUP = "attackcycle";
+    /** Legacy single-blob layout (in the settings group); migrated to per-NPC shards on the first save. */
     private static final String KEY_DB = "db_v2";
+    /** Config group of the shard mirror, kept apart from the settings (and their ConfigChanged listeners). */
+    private static final String DB_GROUP = "attackcycle-db";
+    /** Per-NPC config shards: "npc.<npcKey>" = base64 DbCodec shard; KEY_SEQ = journalSeq they cover. */
+    private static final String KEY_SHARD_PREFIX = "npc.";
+    /** Profiles the config mirror covers at most; a bigger DB lives in the backup file only. */
+    private static final int MAX_CONFIG_SHARDS = 500;
+    private static final String KEY_SEQ = "db_seq";
+    private static final String BACKUP_FILE = "attack-cycle-db-v2.bin";
+    private static final String LEGACY_BACKUP_FILE = "attack-cycle-db-v2.json";
+    private static final String JOURNAL_FILE = "attack-cycle-db-v2.journal";
+    private static final long JOURNAL_COMPACT_BYTES = 512 * 1024;
+    /** Backup is rewritten once dead (superseded) bytes exceed both live bytes and this floor. */
+    private static final long FILE_COMPACT_MIN_DEAD_BYTES = 256 * 1024;
 
     // ---- Change notifications ----
     enum Change { PROFILE, RECORDING, IMPORT, DELETE, RESET, SAVE }
     interface Listener { void onDbChanged(Change change); }
-    private final Set<Listener> listeners = new HashSet<>();
+    private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
     void addListener(Listener l){ if (l != null) listeners.add(l); }
     void removeListener(Listener l){ listeners.remove(l); }
     private void notify(Change c){ for (Listener l : listeners) try { l.onDbChanged(c); } catch (Throwable ignored) {} }
@@ -27,147 +79,862 @@ final class DbService
         Thread t = new Thread(r, "AC-db"); t.setDaemon(true); return t;
     });
 
-    // Manual saving only (no autosave). We just mark dirty and save on demand (Save button / shutdown).
-    private volatile boolean dirtyProfiles = false;
-    private final Object saveLock = new Object();
+    // ---- Dirty shards (monitor) ----
+    // Manual saving only (no autosave). Every journaled mutation marks its NPC key; a save writes just those.
+    /** Keys the backup file doesn't have yet. Invariant: empty (and no rewrite pending) => file covers journalSeq. */
+    private final Set<String> dirtyFile = new LinkedHashSet<>();
+    /** Keys the config shards don't have yet. */
+    private final Set<String> dirtyConfig = new LinkedHashSet<>();
+    private boolean rewriteFile = false;   // reset: rewrite the backup instead of appending
+    private boolean rebuildConfig = false; // reset / single-blob migration: rewrite every config shard
+    private boolean configMirrored = false; // config holds a (complete) shard mirror
 
-    private void markProfilesDirty() { dirtyProfiles = true; }
-    private void flushProfilesIfDirty() {
-        if (!dirtyProfiles) return;
+    private void markDirty(String key) {
+        if (key == null) return;
+        dirtyFile.add(key);
+        dirtyConfig.add(key);
+    }
+
+    /** Monitor held: capture the dirty shards, then hand the actual writes to AC-db. */
+    private void flushDirty() {
         if (hardOffline) return;
-        synchronized (saveLock) {
-            dirtyProfiles = false;
-            try { config.setConfiguration(GROUP, KEY_DB, gson.toJson(db)); } catch (Exception ignored) {}
-            try { backupToFile(); } catch (Exception ignored) {}
+        final ShardDelta file = takeFileDelta();
+        final ShardDelta cfg = takeConfigDelta();
+        // Queued under the monitor: journal appends <= journalSeq run before us, later ones after.
+        runOnDbThread(() -> {
+            if (file == null || writeFileDelta(file)) truncateJournal();
+            if (cfg != null) writeConfigDelta(cfg);
+            notify(Change.SAVE);
+        });
+    }
+
+    /** Changed shards, captured under the monitor as published versions so AC-db can encode them later. */
+    private static final class ShardDelta {
+        long journalSeq;
+        /** Every key to write; absent from both maps (and not lazy) = deleted. */
+        final Set<String> keys = new LinkedHashSet<>();
+        final Map<String, DbModels.NpcProfile> profiles = new HashMap<>();
+        final Map<String, Map<Integer, DbModels.RecRow>> rows = new HashMap<>();
+        /** Keys still undecoded in the store (config rebuild only); copied raw. */
+        final Set<String> lazyKeys = new HashSet<>();
+        /** File: write everything instead of appending. */
+        SnapshotPlan full;
+        /** Config: also drop shard keys that aren't in keys. */
+        boolean rebuild;
+        /** Config: the DB outgrew MAX_CONFIG_SHARDS; remove the whole mirror. */
+        boolean drop;
+    }
+
+    private void capture(ShardDelta d, String k) {
+        d.keys.add(k);
+        if (lazy.containsKey(k)) { d.lazyKeys.add(k); return; }
+        final DbModels.NpcProfile p = profiles.get(k);
+        final Map<Integer, DbModels.RecRow> r = rows.get(k);
+        if (p != null) d.profiles.put(k, p);
+        if (r != null) d.rows.put(k, r);
+    }
+
+    /** Monitor held. Null if the backup is already current. */
+    private ShardDelta takeFileDelta() {
+        if (rewriteFile || (store == null && !dirtyFile.isEmpty())) {
+            final ShardDelta d = new ShardDelta();
+            d.journalSeq = journalSeq;
+            d.full = planFullWrite();
+            return d;
         }
-        notify(Change.SAVE);
+        if (dirtyFile.isEmpty()) return null;
+        final ShardDelta d = new ShardDelta();
+        d.journalSeq = journalSeq;
+        for (String k : dirtyFile) if (!lazy.containsKey(k)) capture(d, k); // lazy = unchanged in the store
+        dirtyFile.clear();
+        return d;
+    }
+
+    /** Monitor held. Null if the config shards are already current. */
+    private ShardDelta takeConfigDelta() {
+        if (lazy.size() + profiles.size() > MAX_CONFIG_SHARDS) {
+            dirtyConfig.clear();
+            if (!configMirrored && !rebuildConfig) return null; // nothing in config to remove
+            configMirrored = false;
+            rebuildConfig = false;
+            final ShardDelta d = new ShardDelta();
+            d.drop = true;
+            return d;
+        }
+        if (!configMirrored) { rebuildConfig = true; configMirrored = true; } // (back) under the cap
+        if (!rebuildConfig && dirtyConfig.isEmpty()) return null;
+        final ShardDelta d = new ShardDelta();
+        d.journalSeq = journalSeq;
+        if (rebuildConfig) {
+            d.rebuild = true;
+            for (String k : lazy.keySet()) capture(d, k);
+            for (String k : profiles.keySet()) capture(d, k);
+            for (String k : rows.keySet()) capture(d, k);
+        } else {
+            for (String k : dirtyConfig) if (!lazy.containsKey(k)) capture(d, k);
+        }
+        dirtyConfig.clear();
+        rebuildConfig = false;
+        return d;
+    }
+
+    /** AC-db. On failure the keys go back into the dirty set, so the journal is kept until they land. */
+    private boolean writeFileDelta(ShardDelta d) {
+        final boolean ok = (d.full != null) ? writeSnapshot(d.full) : appendShards(d);
+        if (!ok) synchronized (this) {
+            if (d.full != null) rewriteFile = true; else dirtyFile.addAll(d.keys);
+        }
+        return ok;
+    }
+
+    /** Append changed shards (tombstones for deleted keys) with a fresh index; compact when mostly dead. AC-db. */
+    private boolean appendShards(ShardDelta d) {
+        final DbStore s;
+        synchronized (this) { s = store; }
+        if (s == null) return false;
+        try (DbStore.Writer w = s.appender()) {
+            for (String k : d.keys) {
+                final DbModels.NpcProfile p = d.profiles.get(k);
+                final Map<Integer, DbModels.RecRow> r = d.rows.get(k);
+                if (p == null && r == null) w.delete(k); else w.put(k, p, r);
+            }
+            w.finish(d.journalSeq);
+            s.adopt(w);
+        } catch (Exception e) {
+            return false;
+        }
+        if (s.deadBytes() > Math.max(s.liveBytes(), FILE_COMPACT_MIN_DEAD_BYTES)) {
+            final SnapshotPlan plan;
+            synchronized (this) { plan = planFullWrite(); }
+            if (!writeSnapshot(plan)) synchronized (this) { rewriteFile = true; }
+        }
+        return true;
+    }
+
+    /** Mirror shards into config, one "npc.<key>" entry each; deleted keys are unset. AC-db. */
+    private void writeConfigDelta(ShardDelta d) {
+        try {
+            if (d.rebuild || d.drop) {
+                final String prefix = DB_GROUP + "." + KEY_SHARD_PREFIX;
+                for (String full : config.getConfigurationKeys(prefix)) {
+                    final String k = full.substring(prefix.length());
+                    if (!d.keys.contains(k)) config.unsetConfiguration(DB_GROUP, KEY_SHARD_PREFIX + k);
+                }
+                config.unsetConfiguration(GROUP, KEY_DB);
+            }
+            if (d.drop) {
+                config.unsetConfiguration(DB_GROUP, KEY_SEQ);
+                return;
+            }
+            for (String k : d.keys) {
+                final byte[] payload = shardBytes(d, k);
+                if (payload == null) config.unsetConfiguration(DB_GROUP, KEY_SHARD_PREFIX + k);
+                else config.setConfiguration(DB_GROUP, KEY_SHARD_PREFIX + k, Base64.getEncoder().encodeToString(payload));
+            }
+            config.setConfiguration(DB_GROUP, KEY_SEQ, Long.toString(d.journalSeq));
+        } catch (Exception e) {
+            synchronized (this) {
+                if (d.drop) configMirrored = true; // retried by the next save
+                else if (d.rebuild) rebuildConfig = true;
+                else dirtyConfig.addAll(d.keys);
+            }
+        }
+    }
+
+    /** Shard payload for a delta key; null = deleted (or unreadable). AC-db. */
+    private byte[] shardBytes(ShardDelta d, String k) throws IOException {
+        if (d.lazyKeys.contains(k)) {
+            synchronized (this) {
+                final DbStore.Entry e = lazy.get(k);
+                if (e != null) {
+                    try { return store.readRaw(e); } catch (IOException corrupt) { return null; }
+                }
+                // decoded (and possibly changed) since the plan; any change is dirty again anyway
+                final DbModels.NpcProfile p = profiles.get(k);
+                final Map<Integer, DbModels.RecRow> r = rows.get(k);
+                return (p == null && r == null) ? null : DbCodec.encodeShard(k, p, r);
+            }
+        }
+        final DbModels.NpcProfile p = d.profiles.get(k);
+        final Map<Integer, DbModels.RecRow> r = d.rows.get(k);
+        return (p == null && r == null) ? null : DbCodec.encodeShard(k, p, r);
     }
 
     private final ConfigManager config;
     private volatile boolean hardOffline = true;
     void setHardOffline(boolean on) { hardOffline = on; }
 
-    private final Gson gson = new GsonBuilder()
-            .setPrettyPrinting()
-            .registerTypeAdapter(java.util.LinkedHashSet.class, new JsonSerializer<java.util.LinkedHashSet<Integer>>() {
-                @Override public JsonElement serialize(java.util.LinkedHashSet<Integer> src, Type t, JsonSerializationContext c) {
-                    return c.serialize(new java.util.ArrayList<>(src));
-                }
-            })
-            .registerTypeAdapter(java.util.ArrayDeque.class, new JsonSerializer<java.util.ArrayDeque<Integer>>() {
-                @Override public JsonElement serialize(java.util.ArrayDeque<Integer> src, Type t, JsonSerializationContext c) {
-                    return c.serialize(new java.util.ArrayList<>(src));
-                }
-            })
-            .registerTypeAdapter(java.util.ArrayDeque.class, new JsonDeserializer<java.util.ArrayDeque<Integer>>() {
-                @Override public java.util.ArrayDeque<Integer> deserialize(JsonElement json, Type t, JsonDeserializationContext c) {
-                    java.util.ArrayDeque<Integer> dq = new java.util.ArrayDeque<>();
-                    if (json != null && json.isJsonArray()) for (JsonElement e : json.getAsJsonArray()) dq.add(e.getAsInt());
-                    return dq;
-                }
-            })
-            .create();
+    private final Gson gson = gsonBuilder().setPrettyPrinting().create();
+    private final Gson gsonLine = gsonBuilder().create(); // journal: one entry per line
+
+    /** Interchange/journal Gson setup (also what the jmh JSON benchmarks measure). */
+    static GsonBuilder gsonBuilder() {
+        return new GsonBuilder()
+                .registerTypeAdapter(java.util.LinkedHashSet.class, new JsonSerializer<java.util.LinkedHashSet<Integer>>() {
+                    @Override public JsonElement serialize(java.util.LinkedHashSet<Integer> src, Type t, JsonSerializationContext c) {
+                        return c.serialize(new java.util.ArrayList<>(src));
+                    }
+                })
+                .registerTypeAdapter(GapWindow.class, new JsonSerializer<GapWindow>() {
+                    @Override public JsonElement serialize(GapWindow src, Type t, JsonSerializationContext c) {
+                        JsonArray arr = new JsonArray();
+                        for (int i = 0; i < src.size(); i++) arr.add(src.get(i));
+                        return arr;
+                    }
+                })
+                .registerTypeAdapter(GapHistogram.class, new JsonSerializer<GapHistogram>() {
+                    @Override public JsonElement serialize(GapHistogram src, Type t, JsonSerializationContext c) {
+                        JsonObject obj = new JsonObject();
+                        for (int g = 1; g <= GapWindow.MAX_VALUE; g++) {
+                            final float w = src.weightOf(g);
+                            if (w > 0) obj.addProperty(Integer.toString(g), w);
+                        }
+                        if (src.stamp() >= 0) obj.addProperty("tick", src.stamp());
+                        return obj;
+                    }
+                })
+                .registerTypeAdapter(GapHistogram.class, new JsonDeserializer<GapHistogram>() {
+                    @Override public GapHistogram deserialize(JsonElement json, Type t, JsonDeserializationContext c) {
+                        GapHistogram h = new GapHistogram();
+                        if (json != null && json.isJsonObject())
+                            for (Map.Entry<String, JsonElement> e : json.getAsJsonObject().entrySet())
+                                try {
+                                    if ("tick".equals(e.getKey())) h.setStamp(e.getValue().getAsInt());
+                                    else h.setWeight(Integer.parseInt(e.getKey()), e.getValue().getAsFloat());
+                                } catch (Exception ignored) {}
+                        return h;
+                    }
+                })
+                .registerTypeAdapter(GapWindow.class, new JsonDeserializer<GapWindow>() {
+                    @Override public GapWindow deserialize(JsonElement json, Type t, JsonDeserializationContext c) {
+                        GapWindow w = new GapWindow();
+                        if (json != null && json.isJsonArray()) for (JsonElement e : json.getAsJsonArray()) w.push(e.getAsInt());
+                        return w;
+                    }
+                });
+    }
 
-    private DbModels.AttackDb db = new DbModels.AttackDb();
+    // ---- Published versions (read lock-free; replaced, never mutated) ----
+    private final ConcurrentHashMap<String, DbModels.NpcProfile> profiles = new ConcurrentHashMap<>();
+    /** npcKey -> unmodifiable (animId -> RecRow) */
+    private final ConcurrentHashMap<String, Map<Integer, DbModels.RecRow>> rows = new ConcurrentHashMap<>();
+    /** Bumped on every publish; cheap "did anything change" check for caches. */
+    private volatile long version = 0;
+
+    // ---- Lazy backing store ----
+    /** Current indexed backup (null until legacy data has been rewritten). Swapped under the monitor. */
+    private DbStore store;
+    /** Keys that live in the store but haven't been decoded yet: key -> shard location. */
+    private final ConcurrentHashMap<String, DbStore.Entry> lazy = new ConcurrentHashMap<>();
+
+    // ---- NPC id -> profile key ----
+    /** Composition ids past this are ignored by the index (they still resolve by name + level). */
+    private static final int MAX_INDEXED_NPC_ID = 1 << 16;
+    /**
+     * npc composition id -> profile key, from every profile's variantIds (lazy ones via the store
+     * index). Copy-on-write under the monitor, only when a profile's ids change (publishProfile /
+     * removeProfile); readers just index the published array.
+     */
+    private volatile String[] keyByNpcId = new String[0];
+
+    /** In-memory only (offline replay): never reads or writes config, the backup or the journal. */
+    private final boolean detached;
 
     DbService(ConfigManager cm) {
         this.config = cm;
+        this.detached = false;
         load();
     }
 
+    private DbService(DbModels.AttackDb seed) {
+        this.config = null;
+        this.detached = true;
+        synchronized (this) { install(seed); }
+    }
+
+    /** Detached instance starting from seed (null = empty); importJson() still works, in memory. */
+    static DbService detached(DbModels.AttackDb seed) {
+        return new DbService(seed);
+    }
+
+    long version() { return version; }
+
+    private void bump() { version++; } // writers only (monitor held)
+
+    /**
+     * Cheap by design (runs from the constructor on plugin start): opens the indexed backup and reads
+     * only its key index. Legacy JSON data is parsed once and rewritten indexed.
+     */
     synchronized void load() {
-        // 1) Try config blob
-        String json = config.getConfiguration(GROUP, KEY_DB);
-        if (json != null && !json.isEmpty()) {
-            try {
-                DbModels.AttackDb incoming = gson.fromJson(json, DbModels.AttackDb.class);
-                db = (incoming != null ? incoming : new DbModels.AttackDb());
-                if (db.version != 2) db.version = 2;
-                return;
-            } catch (Exception ignored) {}
+        final String blob = config.getConfiguration(GROUP, KEY_DB);
+        final long shardSeq = configShardSeq();
+        final Path bin = dataDir().resolve(BACKUP_FILE);
+        dirtyFile.clear();
+        dirtyConfig.clear();
+        rewriteFile = false;
+        rebuildConfig = (blob != null && !blob.isEmpty()); // still on the single-blob layout
+        configMirrored = (shardSeq >= 0);
+
+        // 1) Newest indexed snapshot wins: backup file vs config shards
+        DbStore file = null;
+        if (DbStore.formatOf(bin) == DbStore.FORMAT) {
+            try { file = DbStore.open(bin); } catch (Exception ignored) {}
         }
-        // 2) Try backup file
+        DbStore restored = null;
+        if (shardSeq >= 0 && (file == null || shardSeq > file.journalSeq())) restored = restoreFromConfigShards(shardSeq, bin);
+        if (restored != null) { if (file != null) file.close(); file = restored; }
+
+        boolean rewrite;
+        if (file != null) {
+            installStore(file);
+            journalSeq = file.journalSeq();
+            rewrite = file.salvaged(); // write a clean copy of whatever survived
+        } else {
+            // 2) Pre-index data: newest of the legacy JSON config blob and backup file, parsed eagerly once
+            DbModels.AttackDb best = null;
+            if (blob != null && !blob.isEmpty()) {
+                try { best = gson.fromJson(blob, DbModels.AttackDb.class); } catch (Exception ignored) {}
+            }
+            DbModels.AttackDb legacy = readLegacyBackup();
+            if (legacy != null && (best == null || legacy.journalSeq > best.journalSeq)) best = legacy;
+            install(best);
+            journalSeq = (best != null ? best.journalSeq : 0);
+            rewrite = (best != null);
+        }
+
+        if (shardSeq < 0 && (!lazy.isEmpty() || !profiles.isEmpty())) rebuildConfig = true; // config never had shards
+
+        // 3) Replay whatever the journal holds beyond that snapshot (marks those keys dirty)
+        replayJournal();
+
+        if (rewrite) {
+            final SnapshotPlan snap = planFullWrite();
+            runOnDbThread(() -> { if (!writeSnapshot(snap)) synchronized (this) { rewriteFile = true; } });
+        }
+    }
+
+    /** journalSeq covered by the per-NPC config shards, or -1 if there are none. */
+    private long configShardSeq() {
+        final String v = config.getConfiguration(DB_GROUP, KEY_SEQ);
+        if (v == null) return -1;
+        try { return Long.parseLong(v.trim()); } catch (NumberFormatException e) { return -1; }
+    }
+
+    /** Backup file missing or behind: rebuild it from the config shards. A bad shard costs that NPC only. */
+    private DbStore restoreFromConfigShards(long seq, Path bin) {
+        final String prefix = DB_GROUP + "." + KEY_SHARD_PREFIX;
+        final Path tmp = dataDir().resolve(BACKUP_FILE + ".tmp");
         try {
-            Path p = RuneLite.RUNELITE_DIR.toPath().resolve("attack-cycle-db-v2.json");
-            if (Files.exists(p)) {
-                String txt = Files.readString(p);
-                DbModels.AttackDb incoming = gson.fromJson(txt, DbModels.AttackDb.class);
-                db = (incoming != null ? incoming : new DbModels.AttackDb());
-                if (db.version != 2) db.version = 2;
-                // write it back into config for next time
-                config.setConfiguration(GROUP, KEY_DB, gson.toJson(db));
-                return;
+            try (DbStore.Writer w = DbStore.Writer.create(tmp)) {
+                for (String full : config.getConfigurationKeys(prefix)) {
+                    final String k = full.substring(prefix.length());
+                    try {
+                        final DbCodec.Shard s = DbCodec.decodeShard(Base64.getDecoder().decode(config.getConfiguration(DB_GROUP, KEY_SHARD_PREFIX + k)));
+                        if (!s.tombstone && k.equals(s.key)) w.put(k, s.profile, s.rows);
+                    } catch (Exception ignored) {}
+                }
+                w.finish(seq);
+            }
+            moveIntoPlace(tmp, bin);
+            return DbStore.open(bin);
+        } catch (Exception e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+            return null;
+        }
+    }
+
+    /** The legacy JSON backup; null if it's missing or doesn't parse. */
+    private DbModels.AttackDb readLegacyBackup() {
+        final Path legacy = dataDir().resolve(LEGACY_BACKUP_FILE);
+        if (Files.exists(legacy)) {
+            try (Reader r = Files.newBufferedReader(legacy, StandardCharsets.UTF_8)) { return gson.fromJson(r, DbModels.AttackDb.class); }
+            catch (Exception ignored) {}
+        }
+        return null;
+    }
+
+    /** Replace everything with the contents of a parsed DB (null = empty). Monitor held. */
+    private void install(DbModels.AttackDb incoming) {
+        profiles.clear();
+        rows.clear();
+        lazy.clear();
+        if (incoming != null) {
+            if (incoming.profiles != null) {
+                for (Map.Entry<String, DbModels.NpcProfile> e : incoming.profiles.entrySet())
+                    if (e.getKey() != null && e.getValue() != null) profiles.put(e.getKey(), e.getValue());
+            }
+            if (incoming.recording != null && incoming.recording.rows != null) {
+                for (Map.Entry<String, Map<Integer, DbModels.RecRow>> e : incoming.recording.rows.entrySet())
+                    if (e.getKey() != null && e.getValue() != null) rows.put(e.getKey(), freeze(e.getValue()));
+            }
+        }
+        rebuildNpcIdIndex();
+        bump();
+    }
+
+    /** Replace everything with an (unmaterialized) indexed store. Monitor held. */
+    private void installStore(DbStore s) {
+        install(null);
+        if (store != null && store != s) store.close();
+        store = s;
+        lazy.putAll(s.index());
+        rebuildNpcIdIndex();
+    }
+
+    /** Decode key from the store if it hasn't been yet. Cheap no-op once materialized. */
+    private void ensureLoaded(String key) {
+        if (key != null && lazy.containsKey(key)) materialize(key);
+    }
+
+    private synchronized void materialize(String key) {
+        final DbStore.Entry e = lazy.get(key);
+        if (e == null) return; // raced with another reader
+        try {
+            final DbCodec.Shard shard = store.read(e);
+            if (shard.profile != null) profiles.put(key, shard.profile);
+            if (!shard.rows.isEmpty()) rows.put(key, Collections.unmodifiableMap(shard.rows));
+        } catch (Exception ignored) {
+            // corrupt shard: this NPC starts over, everything else is unaffected
+        }
+        lazy.remove(key); // after the puts, so a key is always visible in one of the maps
+    }
+
+    /**
+     * Point-in-time snapshot: published (materialized) versions plus the shard locations of everything
+     * still lazy. Monitor held to build; AC-db writes it.
+     */
+    private static final class SnapshotPlan {
+        final DbModels.AttackDb db = new DbModels.AttackDb();
+        final List<DbStore.Entry> untouched = new ArrayList<>();
+        DbStore source;
+
+        /** Fully decoded AttackDb (JSON export); corrupt shards are skipped. AC-db. */
+        DbModels.AttackDb resolve() {
+            for (DbStore.Entry e : untouched) {
+                try {
+                    final DbCodec.Shard s = source.read(e);
+                    if (s.profile != null) db.profiles.put(e.key, s.profile);
+                    if (!s.rows.isEmpty()) db.recording.rows.put(e.key, s.rows);
+                } catch (Exception ignored) {}
             }
-        } catch (Exception ignored) {}
-        db = new DbModels.AttackDb();
+            untouched.clear();
+            return db;
+        }
+    }
+
+    /** Plan for rewriting the whole backup; it will cover every dirty key. Monitor held. */
+    private SnapshotPlan planFullWrite() {
+        dirtyFile.clear();
+        rewriteFile = false;
+        return planSnapshot();
+    }
+
+    private SnapshotPlan planSnapshot() {
+        final SnapshotPlan plan = new SnapshotPlan();
+        plan.db.profiles = new HashMap<>(profiles);
+        plan.db.recording.rows = new HashMap<>(rows);
+        plan.db.journalSeq = journalSeq;
+        plan.untouched.addAll(lazy.values());
+        plan.source = store;
+        return plan;
+    }
+
+    /**
+     * The plan itself, or a fresh one if a snapshot written since it was taken has replaced (and closed)
+     * its source; its lazy entries would point into the old file. Runs first in every AC-db task that
+     * reads a plan, so the source stays current while that task runs (only AC-db swaps stores).
+     */
+    private synchronized SnapshotPlan rebase(SnapshotPlan plan) {
+        return (plan.source == store) ? plan : planSnapshot();
+    }
+
+    private static Map<Integer, DbModels.RecRow> freeze(Map<Integer, DbModels.RecRow> m) {
+        return Collections.unmodifiableMap(new HashMap<>(m));
     }
 
-    /** Explicit save (Save button or shutdown). Saves profiles + current recordings. */
+    /** Explicit save (Save button or shutdown): writes the shards changed since the last save. */
     synchronized void save() {
-        if (hardOffline) return;
-        dirtyProfiles = true;
-        flushProfilesIfDirty();
+        flushDirty();
+    }
+
+    /** Bring just the backup file up to date (no config write). Returns immediately; AC-db does the work. */
+    synchronized void backupToFile() {
+        final ShardDelta d = takeFileDelta();
+        if (d != null) runOnDbThread(() -> writeFileDelta(d));
+    }
+
+    /**
+     * Stream one snapshot to a temp file and atomically move it over the backup, so a crash mid-write
+     * never leaves a torn backup. Lazy keys are copied as raw shard bytes (CRC-checked, not decoded).
+     * AC-db only.
+     */
+    private boolean writeSnapshot(SnapshotPlan plan) {
+        final SnapshotPlan snap = rebase(plan);
+        final Path out = dataDir().resolve(BACKUP_FILE);
+        final Path tmp = dataDir().resolve(BACKUP_FILE + ".tmp");
+        final DbStore next;
+        try {
+            try (DbStore.Writer w = DbStore.Writer.create(tmp)) {
+                final Set<String> keys = new LinkedHashSet<>(snap.db.profiles.keySet());
+                keys.addAll(snap.db.recording.rows.keySet());
+                for (String k : keys) w.put(k, snap.db.profiles.get(k), snap.db.recording.rows.get(k));
+                for (DbStore.Entry e : snap.untouched) {
+                    try { w.putRaw(e, snap.source.readRaw(e)); }
+                    catch (IOException corrupt) {} // already lost; don't carry it forward
+                }
+                w.finish(snap.db.journalSeq);
+            }
+            moveIntoPlace(tmp, out);
+            next = DbStore.open(out);
+        } catch (Exception e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+            return false;
+        }
+        adoptStore(snap.source, next);
+        return true;
+    }
+
+    /** Point lazy keys at the freshly written file and retire the old one. AC-db. */
+    private synchronized void adoptStore(DbStore previous, DbStore next) {
+        if (store != previous) { next.close(); return; } // reloaded meanwhile; that load owns the store now
+        for (Iterator<Map.Entry<String, DbStore.Entry>> it = lazy.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, DbStore.Entry> e = it.next();
+            final DbStore.Entry moved = next.index().get(e.getKey());
+            if (moved != null) e.setValue(moved); else it.remove();
+        }
+        store = next;
+        if (previous != null) previous.close();
+    }
+
+    private static void moveIntoPlace(Path tmp, Path out) throws IOException {
+        try { Files.move(tmp, out, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+        catch (AtomicMoveNotSupportedException e) { Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING); }
+    }
+
+    // ---- JSON interchange ----
+    /** Write the whole DB as pretty JSON (AC-db); onDone gets true on success. */
+    synchronized void exportJson(Path target, java.util.function.Consumer<Boolean> onDone) {
+        final SnapshotPlan plan = planSnapshot();
+        runOnDbThread(() -> {
+            final DbModels.AttackDb snap = rebase(plan).resolve();
+            final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            boolean ok = false;
+            try {
+                try (JsonWriter jw = gson.newJsonWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+                    gson.toJson(snap, DbModels.AttackDb.class, jw);
+                }
+                moveIntoPlace(tmp, target);
+                ok = true;
+            } catch (Exception e) {
+                try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+            }
+            if (onDone != null) onDone.accept(ok);
+        });
     }
 
-    synchronized void backupToFile() throws IOException {
-        Path out = RuneLite.RUNELITE_DIR.toPath().resolve("attack-cycle-db-v2.json");
-        Files.write(out, gson.toJson(db).getBytes());
+    /**
+     * Merge a JSON export into the DB: imported profiles/recordings replace same-key entries, the rest
+     * is kept. Read and applied on AC-db (inline when detached). Every imported key is journalled like an
+     * edit, so by the time onDone gets true the import survives a crash; it's then folded into the backup.
+     */
+    void importJson(Path source, java.util.function.Consumer<Boolean> onDone) {
+        if (detached) {
+            final boolean ok = mergeJson(source);
+            if (onDone != null) onDone.accept(ok);
+            return;
+        }
+        runOnDbThread(() -> {
+            if (!mergeJson(source)) { if (onDone != null) onDone.accept(false); return; }
+            // queued behind the journal appends mergeJson just made
+            runOnDbThread(() -> {
+                compactJournal();
+                if (onDone != null) onDone.accept(true);
+            });
+        });
+    }
+
+    /** Parse an export and publish + journal its entries; false if it isn't one. */
+    private boolean mergeJson(Path source) {
+        final DbModels.AttackDb incoming;
+        try (Reader r = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            incoming = gson.fromJson(r, DbModels.AttackDb.class);
+        } catch (IOException | JsonParseException e) {
+            return false;
+        }
+        if (incoming == null) return false;
+        synchronized (this) {
+            if (incoming.profiles != null) {
+                for (Map.Entry<String, DbModels.NpcProfile> e : incoming.profiles.entrySet()) {
+                    if (e.getKey() == null || e.getValue() == null) continue;
+                    ensureLoaded(e.getKey());
+                    profiles.put(e.getKey(), e.getValue());
+                    journal(OP_PROFILE, e.getKey(), null, e.getValue(), null, null);
+                }
+                rebuildNpcIdIndex(); // once, not per key
+            }
+            if (incoming.recording != null && incoming.recording.rows != null) {
+                for (Map.Entry<String, Map<Integer, DbModels.RecRow>> e : incoming.recording.rows.entrySet()) {
+                    if (e.getKey() == null || e.getValue() == null) continue;
+                    ensureLoaded(e.getKey());
+                    final Map<Integer, DbModels.RecRow> pub = freeze(e.getValue());
+                    rows.put(e.getKey(), pub);
+                    journal(OP_RECS, e.getKey(), null, null, null, pub);
+                }
+            }
+            bump();
+        }
+        notify(Change.IMPORT);
+        return true;
     }
 
     synchronized void resetAll() {
-        db = new DbModels.AttackDb();
-        markProfilesDirty();
+        install(null);
+        journal(OP_RESET, null, null, null, null, null);
         notify(Change.RESET);
     }
 
     // ---- Profiles ----
-    synchronized DbModels.NpcProfile getProfileByKey(String key) { return db.profiles.get(key); }
+    /** Current published version (decoded from the store on first access); read-only. Use updateProfile() to change it. */
+    DbModels.NpcProfile getProfileByKey(String key) {
+        if (key == null) return null;
+        ensureLoaded(key);
+        return profiles.get(key);
+    }
 
-    synchronized DbModels.NpcProfile getOrCreateProfileByNpc(net.runelite.api.NPC n) {
-        String name = n.getName();
-        int lvl = n.getCombatLevel();
-        DbModels.EntityKey ek = DbModels.EntityKey.of(name, lvl);
+    /**
+     * Profile key for this NPC: the profile listing its composition id, else derived from name + level.
+     * Allocation-free once the id is known (or the name/level key has been interned).
+     */
+    String keyFor(net.runelite.api.NPC n) {
+        final String k = keyForNpcId(n.getId());
+        return k != null ? k : DbModels.EntityKey.of(n.getName(), n.getCombatLevel()).key;
+    }
 
-        DbModels.NpcProfile p = db.profiles.get(ek.key);
-        boolean changed = false;
-        if (p == null) {
+    /** Key of the profile whose variantIds contain this composition id, or null. */
+    String keyForNpcId(int npcId) {
+        final String[] idx = keyByNpcId;
+        return (npcId > 0 && npcId < idx.length) ? idx[npcId] : null;
+    }
+
+    /** Publish a new version of a profile, re-indexing its npc ids only if they changed. Monitor held. */
+    private void publishProfile(String key, DbModels.NpcProfile p) {
+        final DbModels.NpcProfile old = profiles.put(key, p); // callers materialize first, so old is the previous version
+        final Set<Integer> oldIds = (old == null ? null : old.variantIds);
+        if (!Objects.equals(oldIds, p.variantIds)) reindex(key, oldIds, p.variantIds);
+    }
+
+    /** Drop a profile and its recordings (and its npc ids from the index). Monitor held. */
+    private void removeProfile(String key) {
+        final DbStore.Entry e = lazy.remove(key);
+        final DbModels.NpcProfile old = profiles.remove(key);
+        rows.remove(key);
+        if (e != null) reindex(key, e.variantIds, null);
+        if (old != null) reindex(key, old.variantIds, null);
+    }
+
+    // One copy-on-write of the index: ids still mapped to key are dropped, the new ones mapped to it
+    private void reindex(String key, Set<Integer> oldIds, Set<Integer> newIds) {
+        final String[] cur = keyByNpcId;
+        int len = cur.length;
+        if (newIds != null) for (Integer id : newIds) if (indexable(id) && id >= len) len = id + 1;
+        final String[] idx = Arrays.copyOf(cur, len);
+        if (oldIds != null) for (Integer id : oldIds) if (indexable(id) && id < idx.length && key.equals(idx[id])) idx[id] = null;
+        if (newIds != null) for (Integer id : newIds) if (indexable(id)) idx[id] = key;
+        keyByNpcId = idx;
+    }
+
+    /** Whole index from scratch (install / import). Monitor held. */
+    private void rebuildNpcIdIndex() {
+        int max = 0;
+        for (DbStore.Entry e : lazy.values()) max = maxId(e.variantIds, max);
+        for (DbModels.NpcProfile p : profiles.values()) max = maxId(p.variantIds, max);
+        final String[] idx = new String[max + 1];
+        for (DbStore.Entry e : lazy.values()) indexIds(idx, e.key, e.variantIds);
+        for (DbModels.NpcProfile p : profiles.values()) indexIds(idx, p.key, p.variantIds);
+        keyByNpcId = idx;
+    }
+
+    private static int maxId(Set<Integer> variantIds, int max) {
+        if (variantIds != null) for (Integer id : variantIds) if (indexable(id) && id > max) max = id;
+        return max;
+    }
+
+    private static void indexIds(String[] idx, String key, Set<Integer> variantIds) {
+        if (key == null || variantIds == null) return;
+        for (Integer id : variantIds) if (indexable(id)) idx[id] = key;
+    }
+
+    private static boolean indexable(Integer id) { return id != null && id > 0 && id < MAX_INDEXED_NPC_ID; }
+
+    /**
+     * Published profile for (ek, npcId), creating it (or recording a new variant id) if needed.
+     * Monitor held; journals but doesn't notify. Sets profileTouched when it publishes.
+     */
+    private DbModels.NpcProfile profileFor(DbModels.EntityKey ek, int npcId) {
+        final String known = keyForNpcId(npcId);
+        if (known != null) {
+            final DbModels.NpcProfile byId = getProfileByKey(known);
+            if (byId != null) return byId; // id already recorded as a variant
+        }
+        final DbModels.NpcProfile cur = getProfileByKey(ek.key);
+        if (cur != null && (npcId <= 0 || (cur.variantIds != null && cur.variantIds.contains(npcId)))) return cur;
+
+        final DbModels.NpcProfile p;
+        if (cur == null) {
             p = new DbModels.NpcProfile();
             p.key = ek.key;
             p.name = ek.name;
             p.level = ek.level;
-            db.profiles.put(ek.key, p);
-            changed = true;
+        } else {
+            p = cur.copy();
         }
-        if (n.getId() > 0) {
-            if (p.variantIds == null) p.variantIds = new LinkedHashSet<>();
-            if (p.variantIds.add(n.getId())) changed = true;
-        }
-        if (changed) { markProfilesDirty(); notify(Change.PROFILE); }
+        if (npcId > 0) p.variantIds.add(npcId);
+
+        publishProfile(p.key, p);
+        bump();
+        journal(OP_PROFILE, p.key, null, p, null, null);
+        profileTouched = true;
         return p;
     }
 
+    // ---- Batched learning (LearningWorker hands over one drained batch per call) ----
+    private boolean profileTouched; // monitor held
+
+    /**
+     * Apply a batch of observations as one transaction: one monitor hold, each touched recordings map
+     * republished once, one RECORDING notification (plus PROFILE if a profile changed).
+     * - ANIM: create the profile / variant if needed, count the sighting, and for ATTACK-tagged anims
+     *   push the gap since the previous sighting.
+     * - HIT / HIT_UPDATE_PROFILE: tag the attacker's last anim ATTACK and push the anim -> hit delta;
+     *   the latter also writes the learned ticks into the base phase's block for that style, once
+     *   the anim's interval histogram is confident.
+     * - PROJ: push the flight time into the anim's projectile samples.
+     */
+    synchronized void ingest(ObservationBatch b) {
+        if (b.isEmpty()) return;
+        profileTouched = false;
+        // key -> (animId -> private row copy), published together at the end
+        final Map<String, Map<Integer, DbModels.RecRow>> touched = new LinkedHashMap<>();
+
+        for (int i = 0; i < b.size(); i++) {
+            final DbModels.NpcProfile prof = profileFor(b.key[i], b.npcId[i]);
+            final int anim = b.anim[i];
+            final Map<Integer, DbModels.RecRow> mine = touched.computeIfAbsent(prof.key, k -> new HashMap<>());
+            DbModels.RecRow r = mine.get(anim);
+            if (r == null) {
+                final DbModels.RecRow pub = getRecsFor(prof.key).get(anim);
+                if (pub != null) r = pub.copy();
+                else { r = new DbModels.RecRow(); r.animId = anim; }
+                mine.put(anim, r);
+            }
+
+            if (b.kind[i] == ObservationBatch.ANIM) {
+                // per-animation gap: previous time we saw THIS anim
+                final int prevSeen = r.lastSeenTick;
+                r.seen++;
+                r.lastSeenTick = b.tick[i];
+                if (r.type == DbModels.AnimUiType.ATTACK && prevSeen > 0) r.pushInterval(b.tick[i] - prevSeen, b.tick[i]);
+                continue;
+            }
+            if (b.kind[i] == ObservationBatch.PROJ) { r.pushProj(b.delta[i]); continue; }
+
+            // hitsplats imply damage
+            r.type = DbModels.AnimUiType.ATTACK;
+            r.pushGap(b.delta[i]);
+            if (b.kind[i] == ObservationBatch.HIT_UPDATE_PROFILE) learnBlockTicks(prof, r);
+        }
+
+        for (Map.Entry<String, Map<Integer, DbModels.RecRow>> e : touched.entrySet()) {
+            final Map<Integer, DbModels.RecRow> next = new HashMap<>(getRecsFor(e.getKey()));
+            next.putAll(e.getValue());
+            rows.put(e.getKey(), Collections.unmodifiableMap(next));
+            for (DbModels.RecRow r : e.getValue().values()) journal(OP_REC, e.getKey(), r.animId, null, r, null);
+        }
+        bump();
+
+        notify(Change.RECORDING);
+        if (profileTouched) notify(Change.PROFILE);
+    }
+
+    // Selected anim + per-anim ticks of the base block matching the row's style; nothing until the
+    // row's estimate is confident (one odd sample mustn't rewrite a profile). Only a real change is
+    // copied, published and journalled: a steady estimate hits on every attack. Monitor held.
+    private void learnBlockTicks(DbModels.NpcProfile prof, DbModels.RecRow r) {
+        final Integer est = r.confidentEstTicks();
+        if (est == null) return;
+        final DbModels.NpcProfile cur = getProfileByKey(prof.key);
+        final DbModels.StyleBlock pub = baseBlock(cur, r.style);
+        if (pub == null) return;
+        final DbModels.StyleAnimSettings pubSt = pub.perAnim.get(r.animId);
+        if (pub.defaultAnimId != null && pubSt != null && est.equals(pubSt.ticks)) return;
+
+        final DbModels.NpcProfile edit = cur.copy();
+        final DbModels.StyleBlock bSel = baseBlock(edit, r.style);
+        if (bSel.defaultAnimId == null) bSel.defaultAnimId = r.animId;
+        final DbModels.StyleAnimSettings st = bSel.perAnim.computeIfAbsent(r.animId, k -> new DbModels.StyleAnimSettings());
+        st.ticks = est;
+        profiles.put(edit.key, edit); // ticks only: same variant ids
+        bump();
+        journal(OP_PROFILE, edit.key, null, edit, null, null);
+        profileTouched = true;
+    }
+
+    private static DbModels.StyleBlock baseBlock(DbModels.NpcProfile p, DbModels.Style style) {
+        if (style == DbModels.Style.MELEE) return p.base.melee;
+        if (style == DbModels.Style.RANGED) return p.base.ranged;
+        if (style == DbModels.Style.MAGIC) return p.base.magic;
+        return null;
+    }
+
+    /**
+     * Edit a profile in place: edit runs on a private copy of the current published version and the
+     * result is published, all under the monitor, so a concurrent ingest() (new variant ids, learned
+     * ticks) is never reverted by a stale copy. False (edit not run) if there's no such profile.
+     */
+    synchronized boolean updateProfile(String key, java.util.function.Consumer<DbModels.NpcProfile> edit) {
+        final DbModels.NpcProfile cur = getProfileByKey(key);
+        if (cur == null) return false;
+        final DbModels.NpcProfile p = cur.copy();
+        edit.accept(p);
+        publishProfile(key, p);
+        bump();
+        journal(OP_PROFILE, key, null, p, null, null);
+        notify(Change.PROFILE);
+        return true;
+    }
+
+    /** Publish a whole new version of a profile (new or imported). A copy is stored, so the caller may keep its instance. */
     synchronized void putProfile(DbModels.NpcProfile p) {
-        db.profiles.put(p.key, p);
-        markProfilesDirty();
+        final DbModels.NpcProfile pub = p.copy();
+        ensureLoaded(pub.key); // its recordings stay as they are
+        publishProfile(pub.key, pub);
+        bump();
+        journal(OP_PROFILE, pub.key, null, pub, null, null);
         notify(Change.PROFILE);
     }
 
     synchronized void deleteProfile(String key) {
-        db.profiles.remove(key);
-        db.recording.rows.remove(key);
-        markProfilesDirty();
+        removeProfile(key);
+        bump();
+        journal(OP_DELETE, key, null, null, null, null);
         notify(Change.DELETE);
     }
 
     synchronized void clearProfileSelections(String key) {
-        DbModels.NpcProfile p = db.profiles.get(key);
-        if (p == null) return;
+        DbModels.NpcProfile cur = getProfileByKey(key);
+        if (cur == null) return;
+        DbModels.NpcProfile p = cur.copy();
+        clearPhases(p);
+        publishProfile(key, p);
+        bump();
+        journal(OP_PROFILE, key, null, p, null, null);
+        notify(Change.PROFILE);
+    }
+    private void clearPhases(DbModels.NpcProfile p) {
         clearBlock(p.base.melee); clearBlock(p.base.ranged); clearBlock(p.base.magic); clearBlock(p.base.chargeup);
         for (DbModels.PhaseProfile ph : p.phases.values()) {
             clearBlock(ph.melee); clearBlock(ph.ranged); clearBlock(ph.magic); clearBlock(ph.chargeup);
         }
-        markProfilesDirty();
-        notify(Change.PROFILE);
     }
     private void clearBlock(DbModels.StyleBlock b) {
         b.defaultAnimId = null; b.ticks = null; b.offset = 0; b.projSpeed = null;
@@ -175,79 +942,270 @@ final class DbService
     }
 
     // ---- Recording (RAM; saved only on Save/shutdown) ----
-    synchronized DbModels.RecRow getOrCreateRec(String npcKey, int animId) {
-        Map<Integer, DbModels.RecRow> byAnim = db.recording.rows.computeIfAbsent(npcKey, k -> new HashMap<>());
-        DbModels.RecRow r = byAnim.get(animId);
-        if (r == null) {
-            r = new DbModels.RecRow();
-            r.animId = animId;
-            byAnim.put(animId, r);
-            notifyThrottled(Change.RECORDING);
-        }
-        return r;
+    /**
+     * Edit one recording row in place (created if new): like updateProfile(), edit runs on a copy of
+     * the current published row under the monitor, so learned samples/tags published meanwhile stay.
+     */
+    synchronized void updateRec(String npcKey, int animId, java.util.function.Consumer<DbModels.RecRow> edit) {
+        final DbModels.RecRow cur = getRecsFor(npcKey).get(animId);
+        final DbModels.RecRow r;
+        if (cur != null) r = cur.copy();
+        else { r = new DbModels.RecRow(); r.animId = animId; }
+        edit.accept(r);
+        r.animId = animId;
+        publishRow(npcKey, r);
+        journal(OP_REC, npcKey, animId, null, r, null);
+        notifyThrottled(Change.RECORDING);
     }
 
-    synchronized Map<Integer, DbModels.RecRow> getRecsFor(String npcKey) {
-        return db.recording.rows.getOrDefault(npcKey, java.util.Collections.emptyMap());
+    /** Current published (unmodifiable) recordings for an NPC; safe to iterate from any thread. */
+    Map<Integer, DbModels.RecRow> getRecsFor(String npcKey) {
+        if (npcKey == null) return Collections.emptyMap();
+        ensureLoaded(npcKey);
+        Map<Integer, DbModels.RecRow> m = rows.get(npcKey);
+        return m != null ? m : Collections.emptyMap();
     }
 
+    /** Publish a whole new version of a row. A copy is stored, so the caller may keep its instance. */
     synchronized void putRec(String npcKey, DbModels.RecRow row) {
-        db.recording.rows.computeIfAbsent(npcKey, k -> new HashMap<>()).put(row.animId, row);
+        final DbModels.RecRow pub = row.copy();
+        publishRow(npcKey, pub);
+        journal(OP_REC, npcKey, pub.animId, null, pub, null);
         notifyThrottled(Change.RECORDING);
     }
 
+    private void publishRow(String npcKey, DbModels.RecRow row) {
+        Map<Integer, DbModels.RecRow> next = new HashMap<>(getRecsFor(npcKey));
+        next.put(row.animId, row);
+        rows.put(npcKey, Collections.unmodifiableMap(next));
+        bump();
+    }
+
     synchronized void removeRec(String npcKey, int animId) {
-        Map<Integer, DbModels.RecRow> byAnim = db.recording.rows.get(npcKey);
-        if (byAnim != null) byAnim.remove(animId);
+        Map<Integer, DbModels.RecRow> cur = getRecsFor(npcKey);
+        if (cur != null && cur.containsKey(animId)) {
+            Map<Integer, DbModels.RecRow> next = new HashMap<>(cur);
+            next.remove(animId);
+            rows.put(npcKey, Collections.unmodifiableMap(next));
+            bump();
+            journal(OP_UNREC, npcKey, animId, null, null, null);
+        }
         notifyThrottled(Change.RECORDING);
     }
 
     synchronized void relearnNpc(String key) {
-        Map<Integer, DbModels.RecRow> recs = db.recording.rows.get(key);
-        if (recs != null) {
-            for (DbModels.RecRow r : recs.values()) {
+        Map<Integer, DbModels.RecRow> recs = getRecsFor(key);
+        if (!recs.isEmpty()) {
+            Map<Integer, DbModels.RecRow> next = new HashMap<>();
+            for (DbModels.RecRow old : recs.values()) {
+                DbModels.RecRow r = old.copy();
                 r.estProjSpeedUser = null;
                 r.estTicksUser = null;
                 r.gapsRecent.clear();
                 r.projSpdRecent.clear();
+                r.gapHist.clear();
                 r.type = DbModels.AnimUiType.UNKNOWN;
                 r.style = DbModels.Style.UNKNOWN;
+                next.put(r.animId, r);
             }
+            final Map<Integer, DbModels.RecRow> pub = Collections.unmodifiableMap(next);
+            rows.put(key, pub);
+            bump();
+            journal(OP_RECS, key, null, null, null, pub);
             notifyThrottled(Change.RECORDING);
         }
-        DbModels.NpcProfile p = db.profiles.get(key);
-        if (p != null) {
-            clearBlock(p.base.melee); clearBlock(p.base.ranged); clearBlock(p.base.magic); clearBlock(p.base.chargeup);
-            for (DbModels.PhaseProfile ph : p.phases.values()) {
-                clearBlock(ph.melee); clearBlock(ph.ranged); clearBlock(ph.magic); clearBlock(ph.chargeup);
-            }
-            markProfilesDirty();
+        DbModels.NpcProfile cur = getProfileByKey(key);
+        if (cur != null) {
+            DbModels.NpcProfile p = cur.copy();
+            clearPhases(p);
+            publishProfile(key, p);
+            bump();
+            journal(OP_PROFILE, key, null, p, null, null);
             notify(Change.PROFILE);
         }
     }
 
-    synchronized Map<String, DbModels.NpcProfile> getAllProfiles() { return new HashMap<>(db.profiles); }
+    /**
+     * Weakly consistent listing of every profile (materialized or still in the store index); never
+     * blocks on writers and never decodes a shard.
+     */
+    List<DbModels.ProfileSummary> listProfiles() {
+        // lazy first: materialize() publishes before it un-lazies, so a key can't fall between the two passes
+        final Map<String, DbModels.ProfileSummary> out = new LinkedHashMap<>();
+        for (DbStore.Entry e : lazy.values())
+            if (e.name != null) out.put(e.key, new DbModels.ProfileSummary(e.key, e.name, e.level, e.variantIds));
+        for (DbModels.NpcProfile p : profiles.values()) out.put(p.key, DbModels.ProfileSummary.of(p));
+        return new ArrayList<>(out.values());
+    }
 
-    synchronized List<DbModels.NpcProfile> searchProfiles(String q) {
+    List<DbModels.ProfileSummary> searchProfiles(String q) {
         String s = (q == null ? "" : q.trim().toLowerCase());
-        if (s.isEmpty()) return new ArrayList<>(db.profiles.values());
-        List<DbModels.NpcProfile> res = new ArrayList<>();
-        for (DbModels.NpcProfile e : db.profiles.values()) {
+        List<DbModels.ProfileSummary> all = listProfiles();
+        if (s.isEmpty()) return all;
+        List<DbModels.ProfileSummary> res = new ArrayList<>();
+        for (DbModels.ProfileSummary e : all) {
             String n = (e.name == null ? "" : e.name.toLowerCase());
             if (n.contains(s) || String.valueOf(e.level).contains(s)) res.add(e);
         }
         return res;
     }
 
+    // ---- Write-behind journal ----
+    private static final String OP_PROFILE = "PROFILE", OP_DELETE = "DELETE", OP_REC = "REC",
+            OP_UNREC = "UNREC", OP_RECS = "RECS", OP_RESET = "RESET";
+
+    /** One journal line. Payloads are published (immutable) versions, so AC-db can serialize them later. */
+    private static final class JournalEntry {
+        long seq;
+        String op;
+        String key;
+        Integer animId;
+        DbModels.NpcProfile profile;
+        DbModels.RecRow row;
+        Map<Integer, DbModels.RecRow> rows;
+    }
+
+    private long journalSeq = 0;           // last assigned sequence number (monitor)
+    private Writer journalOut;             // AC-db only
+    private long journalBytes = -1;        // AC-db only; -1 = not measured yet
+    private boolean compactQueued = false; // AC-db only
+
+    private static Path dataDir() { return RuneLite.RUNELITE_DIR.toPath(); }
+
+    /** Stamp a mutation, mark its shard dirty and queue its append. Monitor held, so seq order == publish order. */
+    private void journal(String op, String key, Integer animId, DbModels.NpcProfile profile,
+                         DbModels.RecRow row, Map<Integer, DbModels.RecRow> rows) {
+        markDirtyFor(op, key);
+        final JournalEntry e = new JournalEntry();
+        e.seq = ++journalSeq; e.op = op; e.key = key; e.animId = animId;
+        e.profile = profile; e.row = row; e.rows = rows;
+        runOnDbThread(() -> appendJournal(e));
+    }
+
+    private void markDirtyFor(String op, String key) {
+        if (!OP_RESET.equals(op)) { markDirty(key); return; }
+        dirtyFile.clear();
+        dirtyConfig.clear();
+        rewriteFile = true;
+        rebuildConfig = true;
+    }
+
+    private void runOnDbThread(Runnable r) {
+        if (detached) return; // all AC-db work is persistence
+        try { exec.execute(r); } catch (RejectedExecutionException ignored) {} // closed
+    }
+
+    private void appendJournal(JournalEntry e) {
+        try {
+            if (journalOut == null) {
+                Path p = dataDir().resolve(JOURNAL_FILE);
+                journalBytes = Files.exists(p) ? Files.size(p) : 0;
+                journalOut = Files.newBufferedWriter(p, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            final String line = gsonLine.toJson(e);
+            journalOut.write(line);
+            journalOut.write('\n');
+            journalOut.flush();
+            journalBytes += line.length() + 1; // chars; close enough for a compaction threshold
+        } catch (IOException ignored) {
+            closeJournal();
+            return;
+        }
+        if (journalBytes > JOURNAL_COMPACT_BYTES && !compactQueued) {
+            compactQueued = true;
+            runOnDbThread(this::compactJournal);
+        }
+    }
+
+    /** Fold the journal into the backup by appending the shards it touched (AC-db). */
+    private void compactJournal() {
+        compactQueued = false;
+        final ShardDelta d;
+        synchronized (this) { d = takeFileDelta(); }
+        if (d != null && !writeFileDelta(d)) return; // keep the journal; next append retries
+        // Entries already on disk all have seq <= d.journalSeq; later ones are still queued behind us.
+        truncateJournal();
+    }
+
+    private void truncateJournal() {
+        closeJournal();
+        try {
+            Files.write(dataDir().resolve(JOURNAL_FILE), new byte[0]);
+            journalBytes = 0;
+        } catch (IOException ignored) {}
+    }
+
+    private void closeJournal() {
+        if (journalOut != null) try { journalOut.close(); } catch (IOException ignored) {}
+        journalOut = null;
+        journalBytes = -1;
+    }
+
+    /** Apply journal entries newer than journalSeq. Monitor held (load). Torn/corrupt lines are skipped. */
+    private int replayJournal() {
+        final Path p = dataDir().resolve(JOURNAL_FILE);
+        if (!Files.exists(p)) return 0;
+        int applied = 0;
+        try (BufferedReader in = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                final JournalEntry e;
+                try { e = gsonLine.fromJson(line, JournalEntry.class); } catch (Exception ex) { continue; }
+                if (e == null || e.op == null || e.seq <= journalSeq) continue;
+                applyEntry(e);
+                markDirtyFor(e.op, e.key);
+                journalSeq = e.seq;
+                applied++;
+            }
+        } catch (IOException ignored) {}
+        if (applied > 0) bump();
+        return applied;
+    }
+
+    private void applyEntry(JournalEntry e) {
+        if (!OP_DELETE.equals(e.op)) ensureLoaded(e.key); // entries apply on top of the stored shard
+        switch (e.op) {
+            case OP_PROFILE: if (e.profile != null && e.key != null) publishProfile(e.key, e.profile); break;
+            case OP_DELETE:  if (e.key != null) removeProfile(e.key); break;
+            case OP_REC:     if (e.row != null && e.key != null) publishRow(e.key, e.row); break;
+            case OP_UNREC:
+                if (e.key != null && e.animId != null && rows.containsKey(e.key)) {
+                    Map<Integer, DbModels.RecRow> next = new HashMap<>(rows.get(e.key));
+                    next.remove(e.animId);
+                    rows.put(e.key, Collections.unmodifiableMap(next));
+                }
+                break;
+            case OP_RECS:    if (e.rows != null && e.key != null) rows.put(e.key, freeze(e.rows)); break;
+            case OP_RESET:   lazy.clear(); profiles.clear(); rows.clear(); keyByNpcId = new String[0]; break;
+            default: break;
+        }
+    }
+
+    /** Flush queued journal appends / snapshot writes and stop AC-db (plugin shutdown). */
+    void close() {
+        runOnDbThread(this::closeJournal);
+        exec.shutdown();
+        try { exec.awaitTermination(5, TimeUnit.SECONDS); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+        synchronized (this) {
+            if (store != null) store.close();
+            store = null;
+            lazy.clear();
+        }
+    }
+
     // Throttle frequent recording updates
     private volatile boolean recNotifyScheduled = false;
     private void notifyThrottled(Change c) {
         if (c != Change.RECORDING) { notify(c); return; }
         if (recNotifyScheduled) return;
         recNotifyScheduled = true;
-        exec.schedule(() -> {
-            recNotifyScheduled = false;
-            notify(Change.RECORDING);
-        }, 500, TimeUnit.MILLISECONDS);
+        try {
+            exec.schedule(() -> {
+                recNotifyScheduled = false;
+                notify(Change.RECORDING);
+            }, 500, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {}
     }
 }
@@ -0,0 +1,488 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Indexed backup file (format 1): one framed shard per NPC key plus a key index.
+ *
+ * Layout:
+ *   "ACDB" u8:1
+ *   frame*                          -- tag u32:len u32:crc32 payload
+ *      tag "ACRC": shard payload (DbCodec.encodeShard)
+ *      tag "ACIX": index payload
+ *   u64:indexFrameOffset "ACDT"     -- trailer, always the last 12 bytes
+ *
+ * Index payload: varlong:journalSeq varlong:prevIndexFrameOffset (0 = none) varint:depth
+ *                varint:nPut { str:key str:name zigzag:level ids:variantIds varlong:offset varint:len }*
+ *                varint:nDel { str:key }*
+ * (offset/len locate the shard payload, so a lookup is one positional read.)
+ *
+ * - open() reads the trailer and the index chain only; shards are decoded on demand via read().
+ * - Saves append changed shards (or tombstones for deleted keys), an index frame holding just those
+ *   changes (linked to the previous one) and a trailer, so a write costs the size of the edit. Every
+ *   MAX_INDEX_CHAIN appends the index is written out in full again, which bounds the chain open() walks.
+ *   Superseded frames are dead bytes until the next full rewrite.
+ * - Every frame carries its own CRC. If the trailer or index is unusable, open() rebuilds the index by
+ *   scanning frames (re-syncing on the tag after garbage), keeping the last valid copy of each key.
+ *   A corrupt shard costs that one NPC, never the whole database.
+ */
+final class DbStore implements Closeable
+{
+    static final int FORMAT = 1;
+
+    private static final int TAG_SHARD = tag('A', 'C', 'R', 'C');
+    private static final int TAG_INDEX = tag('A', 'C', 'I', 'X');
+    private static final int TAG_TRAILER = tag('A', 'C', 'D', 'T');
+    private static final int HEADER_LEN = DbCodec.MAGIC.length + 1;
+    private static final int FRAME_HEADER_LEN = 12;
+    private static final int TRAILER_LEN = 12;
+    /** Sanity bound for a single frame; anything larger is corruption. */
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    /** Delta index frames allowed before the next append writes a full one. */
+    private static final int MAX_INDEX_CHAIN = 32;
+
+    /** Where one NPC's shard lives, plus what listings need without decoding it. */
+    static final class Entry
+    {
+        final String key;
+        final String name;   // null if the shard holds recordings only
+        final int level;
+        final Set<Integer> variantIds;
+        final long offset;   // payload offset
+        final int length;    // payload length
+
+        Entry(String key, String name, int level, Set<Integer> variantIds, long offset, int length)
+        {
+            this.key = key; this.name = name; this.level = level;
+            this.variantIds = Collections.unmodifiableSet(variantIds);
+            this.offset = offset; this.length = length;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel ch;
+    private volatile Map<String, Entry> index;
+    private volatile long journalSeq;
+    private volatile long indexAt;   // newest index frame; 0 = none usable (salvaged)
+    private volatile int indexDepth; // delta frames in front of the last full one
+    private final boolean salvaged;
+
+    private DbStore(Path path, FileChannel ch, Map<String, Entry> index, IndexHead head, boolean salvaged)
+    {
+        this.path = path;
+        this.ch = ch;
+        this.index = Collections.unmodifiableMap(index);
+        this.journalSeq = head.journalSeq;
+        this.indexAt = head.at;
+        this.indexDepth = head.depth;
+        this.salvaged = salvaged;
+    }
+
+    /** key -> entry, in file order. */
+    Map<String, Entry> index() { return index; }
+
+    long journalSeq() { return journalSeq; }
+
+    /** Bytes held by the shards the index points at (frames included). */
+    long liveBytes()
+    {
+        long n = 0;
+        for (Entry e : index.values()) n += FRAME_HEADER_LEN + e.length;
+        return n;
+    }
+
+    /** Superseded frames, old indexes and trailers: what a full rewrite would reclaim. */
+    long deadBytes()
+    {
+        try { return Math.max(0, ch.size() - HEADER_LEN - liveBytes()); }
+        catch (IOException e) { return 0; }
+    }
+
+    /** True if the index had to be rebuilt from a frame scan; the caller should write a clean copy. */
+    boolean salvaged() { return salvaged; }
+
+    // ================= Open =================
+    /** Format byte of the file at path (-1 if missing, unreadable or not ours). */
+    static int formatOf(Path path)
+    {
+        try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            final ByteBuffer b = ByteBuffer.allocate(HEADER_LEN);
+            readFully(c, b, 0);
+            return DbCodec.formatOf(b.array());
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+    /** Open a backup file: trailer + index only, or a salvage scan if those are damaged. */
+    static DbStore open(Path path) throws IOException
+    {
+        final FileChannel c = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            final ByteBuffer head = ByteBuffer.allocate(HEADER_LEN);
+            readFully(c, head, 0);
+            if (DbCodec.formatOf(head.array()) != FORMAT) throw new IOException("not an indexed attack-cycle db");
+
+            final DbStore viaIndex = openIndexed(path, c);
+            return viaIndex != null ? viaIndex : salvage(path, c);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            c.close();
+            throw e;
+        }
+    }
+
+    private static DbStore openIndexed(Path path, FileChannel c)
+    {
+        try
+        {
+            final long size = c.size();
+            if (size < HEADER_LEN + FRAME_HEADER_LEN + TRAILER_LEN) return null;
+            final ByteBuffer t = ByteBuffer.allocate(TRAILER_LEN);
+            readFully(c, t, size - TRAILER_LEN);
+            t.flip();
+            final long indexAt = t.getLong();
+            if (t.getInt() != TAG_TRAILER || indexAt < HEADER_LEN || indexAt > size - TRAILER_LEN - FRAME_HEADER_LEN) return null;
+
+            // newest frame first; a key's first mention (put or delete) wins
+            final Map<String, Entry> index = new LinkedHashMap<>();
+            final Set<String> seen = new HashSet<>();
+            IndexHead head = null;
+            long at = indexAt;
+            for (int hops = 0; ; hops++)
+            {
+                final byte[] payload = readFrame(c, at, TAG_INDEX);
+                if (payload == null || hops > MAX_INDEX_CHAIN) return null;
+                final IndexHead f = decodeIndex(payload, at, index, seen);
+                if (head == null) head = f;
+                if (f.prev == 0) break;
+                if (f.prev >= at) return null; // chain must point backwards
+                at = f.prev;
+            }
+            for (Entry e : index.values()) if (e.offset < HEADER_LEN || e.offset + e.length > size) return null;
+            return new DbStore(path, c, index, head, false);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    /** Rebuild the index from every intact shard frame; journalSeq from the newest intact index frame. */
+    private static DbStore salvage(Path path, FileChannel c) throws IOException
+    {
+        final long size = c.size();
+        final Map<String, Entry> index = new LinkedHashMap<>();
+        long seq = 0;
+        final ByteBuffer fh = ByteBuffer.allocate(FRAME_HEADER_LEN);
+        long pos = HEADER_LEN;
+        while (pos + FRAME_HEADER_LEN <= size)
+        {
+            fh.clear();
+            readFully(c, fh, pos);
+            fh.flip();
+            final int tag = fh.getInt();
+            final int len = fh.getInt();
+            if ((tag != TAG_SHARD && tag != TAG_INDEX) || len < 0 || len > MAX_FRAME || pos + FRAME_HEADER_LEN + len > size)
+            {
+                pos++; // garbage: re-sync byte by byte
+                continue;
+            }
+            final byte[] payload = readFrame(c, pos, tag);
+            if (payload == null) { pos++; continue; }
+
+            final long payloadAt = pos + FRAME_HEADER_LEN;
+            try
+            {
+                if (tag == TAG_INDEX)
+                {
+                    seq = Math.max(seq, decodeIndex(payload, pos, new HashMap<>(), new HashSet<>()).journalSeq);
+                }
+                else
+                {
+                    final DbCodec.Shard s = DbCodec.decodeShard(payload);
+                    if (s.key != null)
+                    {
+                        index.remove(s.key); // keep file order == newest last
+                        if (!s.tombstone) index.put(s.key, entryFor(s.key, s.profile, payloadAt, len));
+                    }
+                }
+            }
+            catch (IOException | RuntimeException ignored)
+            {
+                pos++;
+                continue;
+            }
+            pos = payloadAt + len;
+        }
+        final IndexHead head = new IndexHead();
+        head.journalSeq = seq; // at = 0: the next append writes a full index
+        return new DbStore(path, c, index, head, true);
+    }
+
+    // ================= Read =================
+    /** Decode one shard. Throws if its frame fails the CRC or doesn't decode. */
+    DbCodec.Shard read(Entry e) throws IOException
+    {
+        final DbCodec.Shard s = DbCodec.decodeShard(readRaw(e));
+        if (!e.key.equals(s.key)) throw new IOException("index points at the wrong shard");
+        return s;
+    }
+
+    /** CRC-checked shard payload bytes (for copying into a new file without decoding). */
+    byte[] readRaw(Entry e) throws IOException
+    {
+        final byte[] payload = readFrame(ch, e.offset - FRAME_HEADER_LEN, TAG_SHARD);
+        if (payload == null || payload.length != e.length) throw new IOException("corrupt shard " + e.key);
+        return payload;
+    }
+
+    @Override
+    public void close()
+    {
+        try { ch.close(); } catch (IOException ignored) {}
+    }
+
+    // ================= Write =================
+    /** Writer appending to this file, starting from the current index. Seal with finish(), then adopt(). */
+    Writer appender() throws IOException
+    {
+        final FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE);
+        try
+        {
+            final long end = out.size();
+            out.position(end);
+            return new Writer(out, end, index, indexAt, indexDepth);
+        }
+        catch (IOException e)
+        {
+            out.close();
+            throw e;
+        }
+    }
+
+    /** Start serving the index a finished appender wrote. */
+    void adopt(Writer w)
+    {
+        index = Collections.unmodifiableMap(new LinkedHashMap<>(w.index));
+        journalSeq = w.journalSeq;
+        indexAt = w.prevIndexAt;
+        indexDepth = w.depth;
+    }
+
+    /** Sequential frame writer; finish() seals the file with the index and trailer. */
+    static final class Writer implements Closeable
+    {
+        private final FileChannel out;
+        private final Map<String, Entry> index;
+        private final Map<String, Entry> puts = new LinkedHashMap<>();
+        private final Set<String> dels = new LinkedHashSet<>();
+        private long pos;
+        private long journalSeq;
+        private long prevIndexAt; // becomes this writer's own index frame after finish()
+        private int depth;
+
+        private Writer(FileChannel out, long pos, Map<String, Entry> index, long prevIndexAt, int depth)
+        {
+            this.out = out;
+            this.pos = pos;
+            this.index = new LinkedHashMap<>(index);
+            this.prevIndexAt = prevIndexAt;
+            this.depth = depth;
+        }
+
+        /** Fresh file at path (truncated). */
+        static Writer create(Path path) throws IOException
+        {
+            final FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            final Writer w = new Writer(out, 0, Collections.emptyMap(), 0, 0);
+            final ByteBuffer head = ByteBuffer.allocate(HEADER_LEN);
+            head.put(DbCodec.MAGIC).put((byte) FORMAT).flip();
+            try { writeFully(out, head); }
+            catch (IOException e) { out.close(); throw e; }
+            w.pos = HEADER_LEN;
+            return w;
+        }
+
+        /** Encode and append one NPC's shard. */
+        void put(String key, DbModels.NpcProfile profile, Map<Integer, DbModels.RecRow> rows) throws IOException
+        {
+            putRaw(key, profile != null ? profile.name : null, profile != null ? profile.level : 0,
+                    profile != null ? profile.variantIds : Collections.emptySet(), DbCodec.encodeShard(key, profile, rows));
+        }
+
+        /** Append an already-encoded shard (copied from another store). */
+        void putRaw(Entry meta, byte[] payload) throws IOException
+        {
+            putRaw(meta.key, meta.name, meta.level, meta.variantIds, payload);
+        }
+
+        private void putRaw(String key, String name, int level, Set<Integer> ids, byte[] payload) throws IOException
+        {
+            writeFrame(TAG_SHARD, payload);
+            final Entry e = new Entry(key, name, level, new LinkedHashSet<>(ids), pos - payload.length, payload.length);
+            index.put(key, e);
+            puts.put(key, e);
+            dels.remove(key);
+        }
+
+        /** Tombstone for a deleted key (only if the file has it), so salvage scans honor the delete. */
+        void delete(String key) throws IOException
+        {
+            if (index.remove(key) == null) return;
+            writeFrame(TAG_SHARD, DbCodec.encodeTombstone(key));
+            puts.remove(key);
+            dels.add(key);
+        }
+
+        /** Append index (delta, or full when there's no chain or it got long) + trailer and force to disk. */
+        void finish(long journalSeq) throws IOException
+        {
+            this.journalSeq = journalSeq;
+            final long indexAt = pos;
+            final boolean full = (prevIndexAt == 0 || depth >= MAX_INDEX_CHAIN);
+            writeFrame(TAG_INDEX, full
+                    ? encodeIndex(journalSeq, 0, 0, index.values(), Collections.emptySet())
+                    : encodeIndex(journalSeq, prevIndexAt, depth + 1, puts.values(), dels));
+            depth = full ? 0 : depth + 1;
+            prevIndexAt = indexAt;
+            final ByteBuffer t = ByteBuffer.allocate(TRAILER_LEN);
+            t.putLong(indexAt).putInt(TAG_TRAILER).flip();
+            writeFully(out, t);
+            pos += TRAILER_LEN;
+            out.force(true);
+        }
+
+        private void writeFrame(int tag, byte[] payload) throws IOException
+        {
+            final CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            final ByteBuffer fh = ByteBuffer.allocate(FRAME_HEADER_LEN);
+            fh.putInt(tag).putInt(payload.length).putInt((int) crc.getValue()).flip();
+            writeFully(out, fh);
+            writeFully(out, ByteBuffer.wrap(payload));
+            pos += FRAME_HEADER_LEN + payload.length;
+        }
+
+        @Override
+        public void close() throws IOException { out.close(); }
+    }
+
+    // ================= Internals =================
+    private static Entry entryFor(String key, DbModels.NpcProfile p, long offset, int length)
+    {
+        return (p == null)
+                ? new Entry(key, null, 0, Collections.emptySet(), offset, length)
+                : new Entry(key, p.name, p.level, p.variantIds, offset, length);
+    }
+
+    /** Decoded index frame header. */
+    private static final class IndexHead
+    {
+        long journalSeq;
+        long at;   // this frame's offset
+        long prev; // previous index frame, 0 = none
+        int depth;
+    }
+
+    private static byte[] encodeIndex(long journalSeq, long prev, int depth, Collection<Entry> entries, Set<String> deleted) throws IOException
+    {
+        final ByteArrayOutputStream bo = new ByteArrayOutputStream(64 + entries.size() * 32);
+        final DbCodec.Out out = new DbCodec.Out(bo);
+        out.varlong(journalSeq);
+        out.varlong(prev);
+        out.varint(depth);
+        out.varint(entries.size());
+        for (Entry e : entries)
+        {
+            out.str(e.key);
+            out.str(e.name);
+            out.zigzag(e.level);
+            out.ids(e.variantIds);
+            out.varlong(e.offset);
+            out.varint(e.length);
+        }
+        out.varint(deleted.size());
+        for (String k : deleted) out.str(k);
+        return bo.toByteArray();
+    }
+
+    /** Add this frame's entries to into, skipping keys a newer frame already decided (seen). */
+    private static IndexHead decodeIndex(byte[] payload, long at, Map<String, Entry> into, Set<String> seen) throws IOException
+    {
+        final DbCodec.In in = new DbCodec.In(new ByteArrayInputStream(payload), null);
+        final IndexHead h = new IndexHead();
+        h.at = at;
+        h.journalSeq = in.varlong();
+        h.prev = in.varlong();
+        h.depth = in.varint();
+        final int n = in.varint();
+        for (int i = 0; i < n; i++)
+        {
+            final String key = in.str();
+            final String name = in.str();
+            final int level = in.zigzag();
+            final Set<Integer> ids = new LinkedHashSet<>();
+            in.ids(ids);
+            final long offset = in.varlong();
+            final int length = in.varint();
+            if (key != null && seen.add(key)) into.put(key, new Entry(key, name, level, ids, offset, length));
+        }
+        final int nDel = in.varint();
+        for (int i = 0; i < nDel; i++) seen.add(in.str());
+        return h;
+    }
+
+    /** Payload of the frame at pos if its tag and CRC check out; null otherwise. */
+    private static byte[] readFrame(FileChannel c, long pos, int expectTag) throws IOException
+    {
+        if (pos < HEADER_LEN || pos + FRAME_HEADER_LEN > c.size()) return null;
+        final ByteBuffer fh = ByteBuffer.allocate(FRAME_HEADER_LEN);
+        readFully(c, fh, pos);
+        fh.flip();
+        final int tag = fh.getInt();
+        final int len = fh.getInt();
+        final int crc = fh.getInt();
+        if (tag != expectTag || len < 0 || len > MAX_FRAME || pos + FRAME_HEADER_LEN + len > c.size()) return null;
+        final ByteBuffer body = ByteBuffer.allocate(len);
+        readFully(c, body, pos + FRAME_HEADER_LEN);
+        final CRC32 check = new CRC32();
+        check.update(body.array(), 0, len);
+        return ((int) check.getValue() == crc) ? body.array() : null;
+    }
+
+    private static void readFully(FileChannel c, ByteBuffer b, long pos) throws IOException
+    {
+        while (b.hasRemaining())
+        {
+            final int r = c.read(b, pos);
+            if (r < 0) throw new EOFException();
+            pos += r;
+        }
+    }
+
+    private static void writeFully(FileChannel c, ByteBuffer b) throws IOException
+    {
+        while (b.hasRemaining()) c.write(b);
+    }
+
+    private static int tag(char a, char b, char c, char d)
+    {
+        return (a << 24) | (b << 16) | (c << 8) | d;
+    }
+}
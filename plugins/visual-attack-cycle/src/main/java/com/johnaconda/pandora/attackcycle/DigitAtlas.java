@@ -0,0 +1,147 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Pre-rendered overhead countdown labels ("0".."15", shadow included) in one small ARGB image, for
+ * AttackCycleOverlay.
+ *
+ * - Built for one (font size, colour); ensure() rebuilds only when either changes.
+ * - Drawing a label is one drawImage of its cell: no text layout, no String/Color per frame.
+ * - Countdowns never exceed 15 (intervals are clamped to 1..15 in CompiledProfile).
+ * - Other text (LabelLayout's merged badges) is drawn the slow way with the same font, colour and
+ *   shadow.
+ * - Render thread only.
+ */
+final class DigitAtlas
+{
+    static final int MAX_VALUE = 15;
+
+    private static final Color SHADOW = new Color(0, 0, 0, 180);
+
+    private BufferedImage image;
+    private final int[] cellX = new int[MAX_VALUE + 2]; // cell v spans [cellX[v], cellX[v + 1])
+    private final int[] textWidth = new int[MAX_VALUE + 1];
+    private int ascent, cellHeight;
+    private Font font;
+    private FontMetrics metrics;
+    private Color color;
+
+    private int builtSize = -1;
+    private int builtArgb;
+    private int version = 0;
+
+    static boolean covers(int value) { return value >= 0 && value <= MAX_VALUE; }
+
+    /** Make sure the atlas matches the font size and colour; cheap when nothing changed. */
+    void ensure(int fontSize, Color color)
+    {
+        final int argb = color.getRGB();
+        if (image != null && builtSize == fontSize && builtArgb == argb) return;
+
+        final Font font = new Font("Dialog", Font.BOLD, fontSize);
+        final String[] labels = new String[MAX_VALUE + 1];
+
+        // Measure with the same hints the labels are drawn with
+        final BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D pg = probe.createGraphics();
+        hints(pg);
+        final FontMetrics fm = pg.getFontMetrics(font);
+        pg.dispose();
+
+        int x = 0;
+        for (int v = 0; v <= MAX_VALUE; v++)
+        {
+            labels[v] = Integer.toString(v);
+            textWidth[v] = fm.stringWidth(labels[v]);
+            cellX[v] = x;
+            x += textWidth[v] + 2; // + shadow offset, + a pixel so neighbours never bleed
+        }
+        cellX[MAX_VALUE + 1] = x;
+        ascent = fm.getAscent();
+        cellHeight = ascent + fm.getDescent() + 1;
+
+        final BufferedImage img = new BufferedImage(Math.max(1, x), Math.max(1, cellHeight), BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = img.createGraphics();
+        hints(g);
+        g.setFont(font);
+        for (int v = 0; v <= MAX_VALUE; v++)
+        {
+            g.setColor(SHADOW);
+            g.drawString(labels[v], cellX[v] + 1, ascent + 1);
+            g.setColor(color);
+            g.drawString(labels[v], cellX[v], ascent);
+        }
+        g.dispose();
+
+        image = img;
+        this.font = font;
+        this.metrics = fm;
+        this.color = color;
+        builtSize = fontSize;
+        builtArgb = argb;
+        version++;
+    }
+
+    /** Bumped on every rebuild (label sizes may have changed). */
+    int version() { return version; }
+
+    int ascent() { return ascent; }
+
+    /** Height of a label, shadow included. */
+    int cellHeight() { return cellHeight; }
+
+    int stringWidth(String text) { return metrics.stringWidth(text); }
+
+    /** Width of a label's text (without shadow), as FontMetrics.stringWidth would report it. */
+    int textWidth(int value) { return textWidth[value]; }
+
+    /** Draw a label with its text starting at x on baseline y, where drawString(text, x, y) would put it. */
+    void draw(Graphics2D g, int value, int x, int y)
+    {
+        final int sx = cellX[value];
+        final int w = cellX[value + 1] - sx;
+        final int top = y - ascent;
+        g.drawImage(image, x, top, x + w, top + cellHeight, sx, 0, sx + w, cellHeight, null);
+    }
+
+    /**
+     * Draw arbitrary text like a label: same font, colour and shadow, text starting at x on baseline y.
+     * g's font, colour and text hints are restored afterwards; it is the overlay's shared Graphics2D.
+     */
+    void drawText(Graphics2D g, String text, int x, int y)
+    {
+        final Font oldFont = g.getFont();
+        final Color oldColor = g.getColor();
+        final Object oldAa = g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+        final Object oldFm = g.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS);
+        try
+        {
+            hints(g);
+            g.setFont(font);
+            g.setColor(SHADOW);
+            g.drawString(text, x + 1, y + 1);
+            g.setColor(color);
+            g.drawString(text, x, y);
+        }
+        finally
+        {
+            g.setFont(oldFont);
+            g.setColor(oldColor);
+            // a hint that was never set reads as null, which setRenderingHint rejects
+            if (oldAa != null) g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldAa);
+            if (oldFm != null) g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, oldFm);
+        }
+    }
+
+    private static void hints(Graphics2D g)
+    {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+    }
+}
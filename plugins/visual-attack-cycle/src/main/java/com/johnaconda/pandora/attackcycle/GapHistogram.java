@@ -0,0 +1,136 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+
+/**
+ * Long-horizon attack interval histogram for one animation: gap bucket 1..{@link GapWindow#MAX_VALUE}
+ * -> decayed sample weight. Unlike GapWindow (last 16 samples) it is persisted and keeps learning
+ * across sessions, while older samples fade out with game time (half-life {@link #HALF_LIFE_TICKS}).
+ *
+ * - Decay is by elapsed ticks since the previous add (the stamp is persisted with the buckets), applied
+ *   lazily in add. Client tick counts restart at login: a stamp ahead of the current tick means a new
+ *   session, which counts as {@link #SESSION_TICKS}. Long breaks are capped at {@link #MAX_IDLE_TICKS}.
+ * - O(1) add: instead of decaying every bucket, the weight of a new sample grows by decay^-elapsed;
+ *   every bucket and running sum is in that inflated unit and gets renormalized now and then.
+ * - Mode (the estimate), mean/variance and total weight are maintained on add; reads are a few
+ *   loads. Decay scales every bucket alike, so the heaviest bucket only changes when one is added to.
+ * - Confidence = share of weight within one tick of the mode, damped while little has been seen.
+ * - Fixed size: one float per bucket.
+ *
+ * Serialized as the normalized bucket weights plus the stamp (JSON: {"gap": weight, "tick": stamp};
+ * binary: see DbCodec).
+ */
+final class GapHistogram
+{
+    /** Game ticks (half an hour of play) until an old sample's weight has halved. */
+    static final int HALF_LIFE_TICKS = 3000;
+    /** What a logout between two samples counts as; the real time away isn't known. */
+    static final int SESSION_TICKS = HALF_LIFE_TICKS / 4;
+    /** Longer gaps decay like this (1/256): the old shape stays as a weak prior instead of underflowing. */
+    static final int MAX_IDLE_TICKS = 8 * HALF_LIFE_TICKS;
+    /** Estimates below this confidence are shown as low and never written into profiles. */
+    static final double LOW_CONFIDENCE = 0.6;
+
+    private static final double DECAY_PER_TICK = Math.pow(0.5, 1.0 / HALF_LIFE_TICKS);
+    /** Confidence is multiplied by w / (w + PRIOR_WEIGHT): a couple of samples never look certain. */
+    private static final double PRIOR_WEIGHT = 4.0;
+    private static final float RENORMALIZE_AT = 1e6f;
+
+    private final float[] w = new float[GapWindow.MAX_VALUE + 1]; // inflated units; [0] unused
+    private float unit = 1f;      // weight of a sample added at the stamp
+    private int stamp = -1;       // tick of the last add, -1 = never
+    private double total, sumX, sumX2;
+    private int mode = -1;
+
+    /** Count one attack interval seen at {@code tick}; values outside 1..MAX_VALUE are ignored (breaks between fights). */
+    void add(int gap, int tick)
+    {
+        if (gap < 1 || gap > GapWindow.MAX_VALUE) return;
+        if (stamp >= 0 && tick != stamp)
+        {
+            final int elapsed = tick > stamp ? Math.min(tick - stamp, MAX_IDLE_TICKS) : SESSION_TICKS;
+            unit = (float) (unit / Math.pow(DECAY_PER_TICK, elapsed));
+            if (unit > RENORMALIZE_AT) renormalize();
+        }
+        if (tick >= 0) stamp = tick;
+        w[gap] += unit;
+        total += unit;
+        sumX += (double) unit * gap;
+        sumX2 += (double) unit * gap * gap;
+        if (mode < 0 || w[gap] > w[mode]) mode = gap;
+    }
+
+    boolean isEmpty() { return mode < 0; }
+
+    /** Most likely interval (heaviest bucket), or -1 if empty. */
+    int estimate() { return mode; }
+
+    /** Decayed number of samples behind the estimate, as of the last add. */
+    double weight() { return total / unit; }
+
+    double mean() { return total > 0 ? sumX / total : 0; }
+
+    double variance()
+    {
+        if (total <= 0) return 0;
+        final double m = sumX / total;
+        return Math.max(0, sumX2 / total - m * m);
+    }
+
+    /** 0..1: how concentrated the samples are around the estimate, scaled down while there are few. */
+    double confidence()
+    {
+        if (mode < 0) return 0;
+        double near = w[mode];
+        if (mode > 1) near += w[mode - 1];
+        if (mode < GapWindow.MAX_VALUE) near += w[mode + 1];
+        final double n = weight();
+        return (near / total) * (n / (n + PRIOR_WEIGHT));
+    }
+
+    boolean isConfident() { return confidence() >= LOW_CONFIDENCE; }
+
+    GapHistogram copy()
+    {
+        final GapHistogram c = new GapHistogram();
+        System.arraycopy(w, 0, c.w, 0, w.length);
+        c.unit = unit; c.stamp = stamp; c.total = total; c.sumX = sumX; c.sumX2 = sumX2; c.mode = mode;
+        return c;
+    }
+
+    void clear()
+    {
+        Arrays.fill(w, 0f);
+        unit = 1f;
+        stamp = -1;
+        total = sumX = sumX2 = 0;
+        mode = -1;
+    }
+
+    /** Bucket weight in samples (serialization). */
+    float weightOf(int gap) { return (gap < 1 || gap > GapWindow.MAX_VALUE) ? 0f : w[gap] / unit; }
+
+    /** Restore a bucket from its serialized weight; call on a fresh or cleared histogram. */
+    void setWeight(int gap, float weight)
+    {
+        if (gap < 1 || gap > GapWindow.MAX_VALUE || !(weight > 0)) return;
+        final float inflated = weight * unit;
+        total += inflated - w[gap];
+        sumX += (double) (inflated - w[gap]) * gap;
+        sumX2 += (double) (inflated - w[gap]) * gap * gap;
+        w[gap] = inflated;
+        if (mode < 0 || w[gap] > w[mode]) mode = gap;
+    }
+
+    /** Tick of the last add, -1 if none (serialized next to the buckets). */
+    int stamp() { return stamp; }
+
+    void setStamp(int tick) { stamp = Math.max(-1, tick); }
+
+    private void renormalize()
+    {
+        for (int i = 1; i < w.length; i++) w[i] /= unit;
+        total /= unit; sumX /= unit; sumX2 /= unit;
+        unit = 1f;
+    }
+}
@@ -0,0 +1,115 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of recent tick samples (gaps, projectile flight times).
+ *
+ * - Primitive ring buffer holding the last {@link #CAPACITY} samples, oldest first.
+ * - Counting histogram over 1..{@link #MAX_VALUE} kept in sync with the ring.
+ * - Median and quartiles are recomputed on push (one bounded walk over the histogram),
+ *   so reads are a field load: no copy, no sort, no boxing.
+ *
+ * Serialized as a plain JSON int array (oldest first), same as the old ArrayDeque field.
+ */
+final class GapWindow
+{
+    static final int CAPACITY = 16;
+    /** Samples are clamped into 1..MAX_VALUE; nothing we track is meaningful past 60 ticks. */
+    static final int MAX_VALUE = 60;
+
+    private final int[] ring = new int[CAPACITY];
+    private final int[] hist = new int[MAX_VALUE + 1];
+    private int head = 0;   // index of the oldest sample
+    private int size = 0;
+
+    // cached order statistics; -1 while empty
+    private int median = -1;
+    private int lowerQuartile = -1;
+    private int upperQuartile = -1;
+
+    /** Append a sample (clamped to 1..MAX_VALUE), evicting the oldest when full. */
+    void push(int v)
+    {
+        if (v < 1) v = 1; else if (v > MAX_VALUE) v = MAX_VALUE;
+        if (size == CAPACITY)
+        {
+            hist[ring[head]]--;
+            ring[head] = v;
+            head = (head + 1) % CAPACITY;
+        }
+        else
+        {
+            ring[(head + size) % CAPACITY] = v;
+            size++;
+        }
+        hist[v]++;
+        recompute();
+    }
+
+    GapWindow copy()
+    {
+        final GapWindow c = new GapWindow();
+        System.arraycopy(ring, 0, c.ring, 0, CAPACITY);
+        System.arraycopy(hist, 0, c.hist, 0, hist.length);
+        c.head = head; c.size = size;
+        c.median = median; c.lowerQuartile = lowerQuartile; c.upperQuartile = upperQuartile;
+        return c;
+    }
+
+    void clear()
+    {
+        Arrays.fill(hist, 0);
+        head = 0;
+        size = 0;
+        median = lowerQuartile = upperQuartile = -1;
+    }
+
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+
+    /** i-th sample, oldest first. */
+    int get(int i) { return ring[(head + i) % CAPACITY]; }
+
+    /** Median (mean of the two middle samples when even, rounded down); -1 if empty. */
+    int median() { return median; }
+
+    /** 25th percentile (nearest rank); -1 if empty. */
+    int lowerQuartile() { return lowerQuartile; }
+
+    /** 75th percentile (nearest rank); -1 if empty. */
+    int upperQuartile() { return upperQuartile; }
+
+    /** Copy of the samples, oldest first (serialization only). */
+    int[] toArray()
+    {
+        final int[] out = new int[size];
+        for (int i = 0; i < size; i++) out[i] = get(i);
+        return out;
+    }
+
+    private void recompute()
+    {
+        // 0-based ranks we need, all resolved in a single cumulative walk
+        final int midHi = size >>> 1;
+        final int midLo = (size % 2 == 0) ? midHi - 1 : midHi;
+        final int q1 = (size - 1) / 4;
+        final int q3 = (3 * (size - 1)) / 4;
+
+        int lo = -1, hi = -1, a = -1, b = -1;
+        int seen = 0;
+        for (int v = 1; v <= MAX_VALUE && (hi < 0 || b < 0); v++)
+        {
+            final int c = hist[v];
+            if (c == 0) continue;
+            seen += c;
+            if (a < 0 && q1 < seen) a = v;
+            if (lo < 0 && midLo < seen) lo = v;
+            if (hi < 0 && midHi < seen) hi = v;
+            if (b < 0 && q3 < seen) b = v;
+        }
+        median = (lo + hi) / 2;
+        lowerQuartile = a;
+        upperQuartile = b;
+    }
+}
@@ -0,0 +1,94 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+
+/**
+ * Minimal int -> int hash map for the per-frame lookup tables.
+ *
+ * - Open addressing, linear probing, power-of-two capacity; no boxing, no entry objects.
+ * - Integer.MIN_VALUE is reserved as the empty-key marker (game ids are never negative).
+ * - Built once, then read; there is no remove. Not thread-safe: publish a finished map through a
+ *   final/volatile field and don't touch it again.
+ */
+final class IntIntMap
+{
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] vals;
+    private int mask;
+    private int size = 0;
+
+    IntIntMap() { this(8); }
+
+    IntIntMap(int expected)
+    {
+        int cap = 8;
+        while (cap < expected * 2) cap <<= 1;
+        alloc(cap);
+    }
+
+    /** Value for key, or missing if absent. */
+    int get(int key, int missing)
+    {
+        final int i = slot(key);
+        return i < 0 ? missing : vals[i];
+    }
+
+    boolean containsKey(int key) { return slot(key) >= 0; }
+
+    /** Insert or overwrite. */
+    void put(int key, int value)
+    {
+        if (key == EMPTY) return;
+        if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        if (keys[i] == EMPTY) { keys[i] = key; size++; }
+        vals[i] = value;
+    }
+
+    /** Insert only if absent (first writer wins). */
+    void putIfAbsent(int key, int value)
+    {
+        if (slot(key) < 0) put(key, value);
+    }
+
+    int size() { return size; }
+
+    private int slot(int key)
+    {
+        if (key == EMPTY) return -1;
+        int i = mix(key) & mask;
+        while (true)
+        {
+            final int k = keys[i];
+            if (k == key) return i;
+            if (k == EMPTY) return -1;
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void rehash(int cap)
+    {
+        final int[] oldKeys = keys, oldVals = vals;
+        alloc(cap);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != EMPTY) put(oldKeys[i], oldVals[i]);
+    }
+
+    private void alloc(int cap)
+    {
+        keys = new int[cap];
+        Arrays.fill(keys, EMPTY);
+        vals = new int[cap];
+        mask = cap - 1;
+    }
+
+    // ids cluster in small ranges; spread them before masking
+    private static int mix(int k)
+    {
+        final int h = k * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,246 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+
+/**
+ * Placement of one frame's overhead labels, so stacked NPCs don't draw their countdowns on top of
+ * each other.
+ *
+ * - Labels are added most urgent first and placed greedily in that order: at their anchor, else one
+ *   row up or down, else merged into the label they collide with as one "A:2 B:3" badge (name
+ *   initial : ticks left, most urgent first). A widened badge is placed again like a label; when no
+ *   row has room for it the new label is left out rather than drawn over another.
+ * - Collisions are found through a uniform screen grid (cells one label high, two wide, hashed into a
+ *   fixed bucket table): a placement only checks the labels in the cells it covers, roughly linear
+ *   in the number of labels rather than all pairs.
+ * - The solved layout is kept as offsets from the anchors and reused while the same labels show the
+ *   same values and no anchor has moved more than {@link #TOLERANCE_PX} since it was solved.
+ * - Render thread only; arrays grow to the render budget and are then reused.
+ */
+final class LabelLayout
+{
+    /** Anchor movement (px) a solved layout tolerates before it is solved again. */
+    static final int TOLERANCE_PX = 2;
+
+    private static final int BUCKETS = 128; // power of two
+    private static final int GAP = 1;       // px kept between labels
+    private static final int[] NUDGES = { 0, -1, 1 }; // rows to try, in order
+
+    // ---- this frame's input ----
+    private Object[] key = new Object[16];
+    private String[] name = new String[16];
+    private int[] value = new int[16];
+    private int[] anchorX = new int[16], anchorY = new int[16];
+    private int count;
+
+    // ---- solved layout (input it was solved for + result) ----
+    private Object[] solvedKey = new Object[16];
+    private int[] solvedValue = new int[16];
+    private int[] solvedX = new int[16], solvedY = new int[16];
+    private int solvedCount = -1, solvedVersion = -1;
+    private int[] textWidth = new int[16];  // label or badge text width
+    private int[] offY = new int[16];       // baseline offset from the anchor
+    private int[] root = new int[16];       // label it is drawn with (itself unless merged)
+    private int[] nextMember = new int[16]; // badge members after a root, -1 terminated
+    private String[] badge = new String[16];
+    private int ascent, lineHeight;
+
+    // ---- grid: bucket -> chain of (label) entries; a label sits in every cell it covers ----
+    private final int[] bucketHead = new int[BUCKETS];
+    private int[] entryLabel = new int[64], entryNext = new int[64];
+    private int entries;
+
+    private final StringBuilder sb = new StringBuilder(32);
+
+    void begin() { count = 0; }
+
+    /** Add a label (a value DigitAtlas covers) centred on x, baseline y; most urgent first. */
+    void add(Object labelKey, String labelName, int labelValue, int x, int y)
+    {
+        if (count == key.length) grow(count * 2);
+        key[count] = labelKey;
+        name[count] = labelName;
+        value[count] = labelValue;
+        anchorX[count] = x;
+        anchorY[count] = y;
+        count++;
+    }
+
+    /** Solve the frame's labels unless the previous layout still fits them; true if it was solved. */
+    boolean layout(DigitAtlas atlas)
+    {
+        if (reusable(atlas.version())) return false;
+
+        solvedCount = count;
+        solvedVersion = atlas.version();
+        System.arraycopy(key, 0, solvedKey, 0, count);
+        System.arraycopy(value, 0, solvedValue, 0, count);
+        System.arraycopy(anchorX, 0, solvedX, 0, count);
+        System.arraycopy(anchorY, 0, solvedY, 0, count);
+        Arrays.fill(solvedKey, count, solvedKey.length, null); // don't keep despawned NPCs alive
+        solve(atlas);
+        return true;
+    }
+
+    int size() { return count; }
+
+    /** Merged into another label's badge (or left out for lack of room): draw nothing for it. */
+    boolean isMerged(int i) { return root[i] != i; }
+
+    /** Badge text for a label others merged into, else null (draw value(i)). */
+    String badge(int i) { return badge[i]; }
+
+    int value(int i) { return value[i]; }
+
+    /** Where the text starts, for the current anchor. */
+    int textX(int i) { return anchorX[i] - textWidth[i] / 2; }
+
+    int baseline(int i) { return anchorY[i] + offY[i]; }
+
+    private boolean reusable(int atlasVersion)
+    {
+        if (count != solvedCount || atlasVersion != solvedVersion) return false;
+        for (int i = 0; i < count; i++)
+        {
+            if (key[i] != solvedKey[i] || value[i] != solvedValue[i]) return false;
+            if (Math.abs(anchorX[i] - solvedX[i]) > TOLERANCE_PX || Math.abs(anchorY[i] - solvedY[i]) > TOLERANCE_PX) return false;
+        }
+        return true;
+    }
+
+    private void solve(DigitAtlas atlas)
+    {
+        ascent = atlas.ascent();
+        lineHeight = atlas.cellHeight();
+        Arrays.fill(bucketHead, -1);
+        entries = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            root[i] = i;
+            nextMember[i] = -1;
+            badge[i] = null;
+            textWidth[i] = atlas.textWidth(value[i]);
+
+            int blocker = -1;
+            boolean placed = false;
+            for (int step : NUDGES)
+            {
+                offY[i] = step * (lineHeight + GAP);
+                final int hit = firstOverlap(i);
+                if (hit < 0) { placed = true; break; }
+                if (blocker < 0) blocker = hit;
+            }
+
+            if (placed) insert(i);
+            else merge(root[blocker], i, atlas);
+        }
+    }
+
+    // Add label i to the badge of placed label r, which grows around its anchor. The wider badge is
+    // placed again (its row, else a row up or down); if it fits nowhere the badge stays as it was and
+    // i, the least urgent so far, is left out.
+    private void merge(int r, int i, DigitAtlas atlas)
+    {
+        final String oldBadge = badge[r];
+        final int oldWidth = textWidth[r], oldOffY = offY[r];
+        root[i] = r;
+        int last = r;
+        while (nextMember[last] >= 0) last = nextMember[last];
+        nextMember[last] = i;
+
+        sb.setLength(0);
+        for (int m = r; m >= 0; m = nextMember[m])
+        {
+            if (m != r) sb.append(' ');
+            final String n = name[m];
+            sb.append(n == null || n.isEmpty() ? '?' : Character.toUpperCase(n.charAt(0))).append(':').append(value[m]);
+        }
+        badge[r] = sb.toString();
+        textWidth[r] = atlas.stringWidth(badge[r]);
+
+        for (int step : NUDGES)
+        {
+            offY[r] = oldOffY + step * (lineHeight + GAP);
+            if (firstOverlap(r) < 0)
+            {
+                offY[i] = offY[r];
+                insert(r); // cells the badge now covers too; stale entries only cost a rect test
+                return;
+            }
+        }
+
+        nextMember[last] = -1;
+        badge[r] = oldBadge;
+        textWidth[r] = oldWidth;
+        offY[r] = oldOffY;
+        offY[i] = oldOffY;
+    }
+
+    // ---- rects: text width + shadow, one label high ----
+    private int left(int i)   { return anchorX[i] - textWidth[i] / 2; }
+    private int top(int i)    { return anchorY[i] + offY[i] - ascent; }
+    private int right(int i)  { return left(i) + textWidth[i] + 1; }
+    private int bottom(int i) { return top(i) + lineHeight; }
+
+    /** First placed label overlapping label i's rect (with the gap), or -1. */
+    private int firstOverlap(int i)
+    {
+        final int l = left(i) - GAP, t = top(i) - GAP, r = right(i) + GAP, b = bottom(i) + GAP;
+        final int cw = cellWidth();
+        for (int cy = Math.floorDiv(t, lineHeight); cy <= Math.floorDiv(b - 1, lineHeight); cy++)
+        {
+            for (int cx = Math.floorDiv(l, cw); cx <= Math.floorDiv(r - 1, cw); cx++)
+            {
+                for (int e = bucketHead[bucket(cx, cy)]; e >= 0; e = entryNext[e])
+                {
+                    final int j = entryLabel[e];
+                    if (j != i && l < right(j) && left(j) < r && t < bottom(j) && top(j) < b) return j;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int i)
+    {
+        final int cw = cellWidth();
+        for (int cy = Math.floorDiv(top(i), lineHeight); cy <= Math.floorDiv(bottom(i) - 1, lineHeight); cy++)
+        {
+            for (int cx = Math.floorDiv(left(i), cw); cx <= Math.floorDiv(right(i) - 1, cw); cx++)
+            {
+                if (entries == entryLabel.length)
+                {
+                    entryLabel = Arrays.copyOf(entryLabel, entries * 2);
+                    entryNext = Arrays.copyOf(entryNext, entries * 2);
+                }
+                final int bkt = bucket(cx, cy);
+                entryLabel[entries] = i;
+                entryNext[entries] = bucketHead[bkt];
+                bucketHead[bkt] = entries++;
+            }
+        }
+    }
+
+    private int cellWidth() { return Math.max(1, lineHeight * 2); }
+
+    private static int bucket(int cx, int cy) { return (cx * 0x9E3779B1 ^ cy * 0x85EBCA6B) >>> 25 & (BUCKETS - 1); }
+
+    private void grow(int n)
+    {
+        key = Arrays.copyOf(key, n);
+        name = Arrays.copyOf(name, n);
+        value = Arrays.copyOf(value, n);
+        anchorX = Arrays.copyOf(anchorX, n);
+        anchorY = Arrays.copyOf(anchorY, n);
+        solvedKey = Arrays.copyOf(solvedKey, n);
+        solvedValue = Arrays.copyOf(solvedValue, n);
+        solvedX = Arrays.copyOf(solvedX, n);
+        solvedY = Arrays.copyOf(solvedY, n);
+        textWidth = Arrays.copyOf(textWidth, n);
+        offY = Arrays.copyOf(offY, n);
+        root = Arrays.copyOf(root, n);
+        nextMember = Arrays.copyOf(nextMember, n);
+        badge = Arrays.copyOf(badge, n);
+    }
+}
@@ -0,0 +1,138 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer / single-consumer ring of learning events (the ObservationBatch record
+ * kinds), from the client thread to the learning worker.
+ *
+ * - Struct of primitive columns plus interned EntityKey refs; offering is a handful of array stores
+ *   and one ordered store of the tail. No locks, no allocation.
+ * - Tick boundaries: the producer calls endTick() at GameTick; the consumer takes one completed tick
+ *   at a time (drainTick), so a batch is exactly one tick's events even if it wakes mid-tick.
+ * - Full ring: the event is dropped and counted (a few lost samples beat stalling the game).
+ *   dropped() / highWater() are the backpressure metrics.
+ * - Exactly one producer thread and one consumer thread at a time.
+ */
+final class LearningQueue
+{
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private final int mask;
+    private final byte[] kind;
+    private final int[] tick;
+    private final int[] npcId;
+    private final int[] anim;
+    private final int[] delta;
+    private final DbModels.EntityKey[] key;
+
+    /** Next slot to read (consumer-owned). */
+    private final AtomicLong head = new AtomicLong();
+    /** Next slot to write (producer-owned). */
+    private final AtomicLong tail = new AtomicLong();
+    /** End of the last completed tick (producer-owned); never ahead of tail. */
+    private final AtomicLong sealed = new AtomicLong();
+
+    // ---- metrics (written by the producer on the rare paths only, read anywhere) ----
+    private volatile long dropped = 0;
+    private volatile int highWater = 0;
+
+    LearningQueue(int capacity)
+    {
+        int cap = 2;
+        while (cap < capacity) cap <<= 1;
+        mask = cap - 1;
+        kind = new byte[cap];
+        tick = new int[cap];
+        npcId = new int[cap];
+        anim = new int[cap];
+        delta = new int[cap];
+        key = new DbModels.EntityKey[cap];
+    }
+
+    // ---- producer ----
+    boolean offerAnim(DbModels.EntityKey k, int id, int a, int t)
+    {
+        return offer(ObservationBatch.ANIM, k, id, a, t, 0);
+    }
+
+    boolean offerHit(DbModels.EntityKey k, int id, int a, int t, int d, boolean updateProfile)
+    {
+        return offer(updateProfile ? ObservationBatch.HIT_UPDATE_PROFILE : ObservationBatch.HIT, k, id, a, t, d);
+    }
+
+    boolean offerProjectile(DbModels.EntityKey k, int id, int a, int t, int flight)
+    {
+        return offer(ObservationBatch.PROJ, k, id, a, t, flight);
+    }
+
+    private boolean offer(byte kd, DbModels.EntityKey k, int id, int a, int t, int d)
+    {
+        final long tl = tail.get();
+        final long hd = head.get();
+        if (tl - hd > mask) { dropped++; return false; }
+        final int i = (int) tl & mask;
+        kind[i] = kd; key[i] = k; npcId[i] = id; anim[i] = a; tick[i] = t; delta[i] = d;
+        tail.lazySet(tl + 1); // publishes the columns above
+
+        final int used = (int) (tl + 1 - hd);
+        if (used > highWater) highWater = used;
+        return true;
+    }
+
+    /** Everything offered so far belongs to a completed tick. Call at GameTick, before waking the consumer. */
+    void endTick()
+    {
+        sealed.lazySet(tail.get());
+    }
+
+    // ---- consumer ----
+    /**
+     * Move the oldest completed tick's events into out (in order): up to the last endTick(), and only
+     * the leading run with one tick value if the consumer fell behind. Returns the number moved.
+     */
+    int drainTick(ObservationBatch out)
+    {
+        final long hd = head.get();
+        final long end = sealed.get();
+        if (end <= hd) return 0;
+        final int t = tick[(int) hd & mask];
+        long p = hd;
+        for (; p < end; p++)
+        {
+            final int i = (int) p & mask;
+            if (tick[i] != t) break;
+            out.add(kind[i], key[i], npcId[i], anim[i], tick[i], delta[i]);
+            key[i] = null;
+        }
+        head.lazySet(p);
+        return (int) (p - hd);
+    }
+
+    /** Move everything queued so far into out, completed tick or not (shutdown). Returns the number moved. */
+    int drainTo(ObservationBatch out)
+    {
+        final long hd = head.get();
+        final long tl = tail.get();
+        for (long p = hd; p < tl; p++)
+        {
+            final int i = (int) p & mask;
+            out.add(kind[i], key[i], npcId[i], anim[i], tick[i], delta[i]);
+            key[i] = null;
+        }
+        if (tl != hd) head.lazySet(tl);
+        return (int) (tl - hd);
+    }
+
+    boolean isEmpty() { return head.get() == tail.get(); }
+
+    /** True if drainTick() has something to take. */
+    boolean hasCompletedTick() { return sealed.get() > head.get(); }
+
+    /** Events accepted so far. */
+    long accepted() { return tail.get(); }
+    long dropped() { return dropped; }
+    /** Most events ever waiting at once. */
+    int highWater() { return highWater; }
+    int capacity() { return mask + 1; }
+}
@@ -0,0 +1,84 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consumer side of the LearningQueue: a daemon thread ("AC-learn") that drains queued events into an
+ * ObservationBatch and applies them with DbService.ingest(), so auto-tagging, gap samples and
+ * profile updates never run on the client thread.
+ *
+ * - The client thread offers events as they happen, ends the tick in the queue and calls wake()
+ *   once per tick; the worker parks in between (with a timeout, in case a wake-up is missed).
+ * - One ingest() per completed tick, oldest first; a worker that fell behind catches up tick by
+ *   tick. Events of the tick in progress wait for its end.
+ * - stop() lets the worker apply what's still queued, then joins it.
+ * - A batch whose ingest() throws is dropped whole: failed() counts its events (next to the queue's
+ *   dropped()) and firstFailure() keeps the first exception for a debugger.
+ */
+final class LearningWorker
+{
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long STOP_WAIT_MS = 2000;
+
+    private final DbService db;
+    private final LearningQueue queue;
+    private final ObservationBatch batch = new ObservationBatch(); // worker thread only
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long batches = 0;
+    private volatile long failed = 0;
+    private volatile Throwable firstFailure;
+
+    LearningWorker(DbService db, LearningQueue queue)
+    {
+        this.db = db;
+        this.queue = queue;
+        this.thread = new Thread(this::run, "AC-learn");
+        this.thread.setDaemon(true);
+    }
+
+    void start() { thread.start(); }
+
+    /** Producer hint: there's a tick's worth of events to apply. */
+    void wake() { LockSupport.unpark(thread); }
+
+    void stop()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+        try { thread.join(STOP_WAIT_MS); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+    }
+
+    /** Batches applied so far. */
+    long batches() { return batches; }
+
+    /** Events lost because ingest() threw on their batch. */
+    long failed() { return failed; }
+
+    /** First exception ingest() threw, or null. */
+    Throwable firstFailure() { return firstFailure; }
+
+    private void run()
+    {
+        while (running)
+        {
+            while (running && queue.drainTick(batch) > 0) apply();
+            if (running && !queue.hasCompletedTick()) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        while (queue.drainTick(batch) > 0) apply();
+        if (queue.drainTo(batch) > 0) apply(); // whatever arrived before stop(), tick ended or not
+    }
+
+    private void apply()
+    {
+        try { db.ingest(batch); batches++; }
+        catch (Exception e)
+        {
+            // a bad batch only costs its samples
+            failed += batch.size();
+            if (firstFailure == null) firstFailure = e;
+        }
+        finally { batch.clear(); }
+    }
+}
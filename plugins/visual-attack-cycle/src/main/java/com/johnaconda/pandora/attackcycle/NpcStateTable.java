@@ -0,0 +1,194 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+import net.runelite.api.NPC;
+
+/**
+ * Runtime per-NPC state as a struct of primitive arrays.
+ *
+ * - npcIndex -> slot is a direct array lookup (no boxing, no hashing).
+ * - Slots are claimed lazily, only once an NPC becomes relevant to us, and recycled on despawn.
+ * - Columns are plain int[] indexed by slot; AttackTracker works on them directly.
+ * - The relevant set (NPCs fighting us or that we're fighting) is a dense slot list kept up to date
+ *   from interaction/spawn/despawn events, so per-tick and per-frame work only walks those few slots.
+ * - Client thread only, like the rest of the event handlers; no locking.
+ */
+final class NpcStateTable
+{
+    /** "No value" marker for every int column (and for slotOf misses). */
+    static final int NONE = -1;
+
+    /** Phase ordinal of the profile's base phase; n > 0 is the n-th phase of a CompiledProfile. */
+    static final int PHASE_BASE = 0;
+
+    private static final int INITIAL_SLOTS = 16;
+    private static final int INITIAL_INDEX_RANGE = 1024;
+
+    /** npcIndex -> slot + 1 (0 = not tracked). Grows to cover the highest index seen. */
+    private int[] slotByIndex = new int[INITIAL_INDEX_RANGE];
+
+    // ---- Columns (indexed by slot) ----
+    NPC[] npc           = new NPC[INITIAL_SLOTS];
+    int[] npcIndex      = filled(INITIAL_SLOTS);
+    int[] lastAnim      = filled(INITIAL_SLOTS);
+    int[] lastAnimTick  = filled(INITIAL_SLOTS);
+    int[] lastAttackTick = filled(INITIAL_SLOTS);
+    int[] lastGap       = filled(INITIAL_SLOTS);
+    /** Tick the projectile of the current attack lands (see CombatEngine.onProjectileMoved), or NONE. */
+    int[] projLandTick  = filled(INITIAL_SLOTS);
+    /** Active phase by name (null = base); the ordinal below is only a cache of it. */
+    String[] phaseName  = new String[INITIAL_SLOTS];
+    /** phaseName resolved against phaseTables[slot]; re-resolved when the NPC's tables change. */
+    int[] phase         = new int[INITIAL_SLOTS];
+    CompiledProfile[] phaseTables = new CompiledProfile[INITIAL_SLOTS];
+    /** Position in relevantSlots, or NONE if the slot isn't in the relevant set. */
+    int[] relevantPos   = filled(INITIAL_SLOTS);
+
+    // ---- Relevant set (dense, unordered) ----
+    private int[] relevantSlots = new int[INITIAL_SLOTS];
+    private int relevantCount = 0;
+
+    // ---- Slot allocation ----
+    private int[] freeSlots = new int[INITIAL_SLOTS];
+    private int freeCount = 0;
+    private int highWater = 0;   // slots [0, highWater) have been handed out at least once
+    private int live = 0;
+
+    /** Slot for this NPC index, or NONE if we aren't tracking it. */
+    int slotOf(int index)
+    {
+        if (index < 0 || index >= slotByIndex.length) return NONE;
+        return slotByIndex[index] - 1;
+    }
+
+    /** Existing slot for the NPC, or a freshly reset one. */
+    int claim(NPC n)
+    {
+        final int index = n.getIndex();
+        final int existing = slotOf(index);
+        if (existing != NONE)
+        {
+            npc[existing] = n; // same index, possibly a new NPC object after a transform
+            return existing;
+        }
+
+        final int slot;
+        if (freeCount > 0) slot = freeSlots[--freeCount];
+        else
+        {
+            if (highWater == npcIndex.length) growColumns(highWater * 2);
+            slot = highWater++;
+        }
+        if (index >= slotByIndex.length) slotByIndex = Arrays.copyOf(slotByIndex, Math.max(index + 1, slotByIndex.length * 2));
+
+        slotByIndex[index] = slot + 1;
+        npc[slot] = n;
+        npcIndex[slot] = index;
+        resetSlot(slot);
+        phaseName[slot] = null;
+        phase[slot] = PHASE_BASE;
+        phaseTables[slot] = null;
+        relevantPos[slot] = NONE;
+        live++;
+        return slot;
+    }
+
+    /** Forget the NPC at this index (despawn) and recycle its slot. */
+    void release(int index)
+    {
+        final int slot = slotOf(index);
+        if (slot == NONE) return;
+        unmarkRelevant(slot);
+        slotByIndex[index] = 0;
+        npc[slot] = null;
+        npcIndex[slot] = NONE;
+        phaseName[slot] = null;
+        phaseTables[slot] = null;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        freeSlots[freeCount++] = slot;
+        live--;
+    }
+
+    /** Clear animation + cadence state but keep the slot (and the active phase). */
+    void resetSlot(int slot)
+    {
+        lastAnim[slot] = NONE;
+        lastAnimTick[slot] = NONE;
+        lastAttackTick[slot] = NONE;
+        lastGap[slot] = NONE;
+        projLandTick[slot] = NONE;
+    }
+
+    // ---- Relevant set ----
+    void markRelevant(int slot)
+    {
+        if (relevantPos[slot] != NONE) return;
+        if (relevantCount == relevantSlots.length) relevantSlots = Arrays.copyOf(relevantSlots, relevantCount * 2);
+        relevantPos[slot] = relevantCount;
+        relevantSlots[relevantCount++] = slot;
+    }
+
+    /** Swap-remove; safe while walking the set backwards. */
+    void unmarkRelevant(int slot)
+    {
+        final int pos = relevantPos[slot];
+        if (pos == NONE) return;
+        final int last = relevantSlots[--relevantCount];
+        relevantSlots[pos] = last;
+        relevantPos[last] = pos;
+        relevantPos[slot] = NONE;
+    }
+
+    boolean isRelevant(int slot) { return relevantPos[slot] != NONE; }
+
+    int relevantCount() { return relevantCount; }
+
+    /** i-th member of the relevant set (0 <= i < relevantCount()), in no particular order. */
+    int relevantSlot(int i) { return relevantSlots[i]; }
+
+    void clear()
+    {
+        Arrays.fill(slotByIndex, 0);
+        Arrays.fill(npc, null);
+        Arrays.fill(phaseName, null);
+        Arrays.fill(phaseTables, null);
+        Arrays.fill(npcIndex, NONE);
+        Arrays.fill(relevantPos, NONE);
+        relevantCount = 0;
+        freeCount = 0;
+        highWater = 0;
+        live = 0;
+    }
+
+    int size() { return live; }
+
+    private void growColumns(int cap)
+    {
+        npc            = Arrays.copyOf(npc, cap);
+        npcIndex       = grow(npcIndex, cap);
+        lastAnim       = grow(lastAnim, cap);
+        lastAnimTick   = grow(lastAnimTick, cap);
+        lastAttackTick = grow(lastAttackTick, cap);
+        lastGap        = grow(lastGap, cap);
+        projLandTick   = grow(projLandTick, cap);
+        phaseName      = Arrays.copyOf(phaseName, cap);
+        phase          = Arrays.copyOf(phase, cap);
+        phaseTables    = Arrays.copyOf(phaseTables, cap);
+        relevantPos    = grow(relevantPos, cap);
+    }
+
+    private static int[] grow(int[] a, int cap)
+    {
+        final int old = a.length;
+        final int[] out = Arrays.copyOf(a, cap);
+        Arrays.fill(out, old, cap, NONE);
+        return out;
+    }
+
+    private static int[] filled(int n)
+    {
+        final int[] a = new int[n];
+        Arrays.fill(a, NONE);
+        return a;
+    }
+}
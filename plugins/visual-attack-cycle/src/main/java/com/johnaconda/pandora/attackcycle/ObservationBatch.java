@@ -0,0 +1,64 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+
+/**
+ * A run of learning input (drained from the LearningQueue), applied in one go by DbService.ingest().
+ *
+ * - Struct of primitive columns, reused batch after batch: appending a record is a few array stores.
+ * - Keys are interned EntityKeys (see DbModels.EntityKey.of), so recording allocates nothing.
+ * - Records keep arrival order; ingest() replays them in that order.
+ * - Owned by one thread at a time (the learning worker).
+ */
+final class ObservationBatch
+{
+    /** NPC played anim at tick. */
+    static final byte ANIM = 1;
+    /** Hitsplat on us, delta ticks after the attacker's last anim (anim): tag it ATTACK. */
+    static final byte HIT = 2;
+    /** HIT, and also fold the learned ticks into the base phase's matching style block. */
+    static final byte HIT_UPDATE_PROFILE = 3;
+    /** Projectile launched off anim at us, delta = flight ticks. */
+    static final byte PROJ = 4;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    byte[] kind = new byte[INITIAL_CAPACITY];
+    int[] tick = new int[INITIAL_CAPACITY];
+    int[] npcId = new int[INITIAL_CAPACITY];
+    int[] anim = new int[INITIAL_CAPACITY];
+    int[] delta = new int[INITIAL_CAPACITY];
+    DbModels.EntityKey[] key = new DbModels.EntityKey[INITIAL_CAPACITY];
+    private int size = 0;
+
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+
+    void clear()
+    {
+        Arrays.fill(key, 0, size, null);
+        size = 0;
+    }
+
+    void add(byte kd, DbModels.EntityKey k, int id, int a, int t, int d)
+    {
+        if (size == kind.length) grow(size * 2);
+        kind[size] = kd;
+        key[size] = k;
+        npcId[size] = id;
+        anim[size] = a;
+        tick[size] = t;
+        delta[size] = d;
+        size++;
+    }
+
+    private void grow(int cap)
+    {
+        kind  = Arrays.copyOf(kind, cap);
+        tick  = Arrays.copyOf(tick, cap);
+        npcId = Arrays.copyOf(npcId, cap);
+        anim  = Arrays.copyOf(anim, cap);
+        delta = Arrays.copyOf(delta, cap);
+        key   = Arrays.copyOf(key, cap);
+    }
+}
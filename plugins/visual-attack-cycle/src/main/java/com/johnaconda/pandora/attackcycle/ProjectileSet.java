@@ -0,0 +1,126 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+
+/**
+ * Projectiles already handled, by instance. ProjectileMoved repeats every client frame for every
+ * projectile in flight; each projectile should be processed once.
+ *
+ * - Open addressing on the identity hash, linear probing, power-of-two capacity; keys plus the
+ *   cycle each projectile lands.
+ * - No removal per projectile: once the table is half full, projectiles that have landed are swept
+ *   out in one pass (amortized O(1) per add). The sweep works in place, closing each gap by
+ *   shifting the rest of its probe run back, so a steady stream of projectiles allocates nothing;
+ *   only if the ones still in flight would keep the table half full is it rehashed into one twice
+ *   the size.
+ * - Client thread only.
+ */
+final class ProjectileSet
+{
+    /** Landed projectiles are kept this many cycles longer, in case the client reports one late. */
+    private static final int GRACE_CYCLES = 30;
+
+    private Object[] keys;
+    private int[] endCycle;
+    private int mask;
+    private int size = 0;
+
+    ProjectileSet(int capacity)
+    {
+        int cap = 8;
+        while (cap < capacity) cap <<= 1;
+        alloc(cap);
+    }
+
+    /** True the first time p is seen; it's then remembered until endCycle has passed. */
+    boolean add(Object p, int end, int nowCycle)
+    {
+        int i = mix(System.identityHashCode(p)) & mask;
+        while (keys[i] != null)
+        {
+            if (keys[i] == p) return false;
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length)
+        {
+            sweep(nowCycle);
+            i = mix(System.identityHashCode(p)) & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+        }
+        keys[i] = p;
+        endCycle[i] = end;
+        size++;
+        return true;
+    }
+
+    int size() { return size; }
+
+    void clear()
+    {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    // Drop the projectiles that have landed; double (rehash) if the rest would keep the table half full
+    private void sweep(int nowCycle)
+    {
+        final Object[] oldKeys = keys;
+        final int[] oldEnd = endCycle;
+        int live = 0;
+        for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != null && oldEnd[i] + GRACE_CYCLES >= nowCycle) live++;
+
+        int cap = oldKeys.length;
+        while ((live + 1) * 4 > cap) cap <<= 1;
+        if (cap == oldKeys.length)
+        {
+            for (int i = 0; i < keys.length; )
+            {
+                // removeAt may shift a not yet visited entry into i: look at i again
+                if (keys[i] != null && endCycle[i] + GRACE_CYCLES < nowCycle) removeAt(i);
+                else i++;
+            }
+            return;
+        }
+
+        alloc(cap);
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] == null || oldEnd[i] + GRACE_CYCLES < nowCycle) continue;
+            int j = mix(System.identityHashCode(oldKeys[i])) & mask;
+            while (keys[j] != null) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            endCycle[j] = oldEnd[i];
+            size++;
+        }
+    }
+
+    // Backward-shift deletion: later entries of the probe run move into the gap unless that would put
+    // them before their home slot, so no lookup stops early at an empty slot
+    private void removeAt(int hole)
+    {
+        for (int j = (hole + 1) & mask; keys[j] != null; j = (j + 1) & mask)
+        {
+            final int home = mix(System.identityHashCode(keys[j])) & mask;
+            if (((j - home) & mask) < ((j - hole) & mask)) continue; // home lies between the gap and j
+            keys[hole] = keys[j];
+            endCycle[hole] = endCycle[j];
+            hole = j;
+        }
+        keys[hole] = null;
+        size--;
+    }
+
+    private void alloc(int cap)
+    {
+        keys = new Object[cap];
+        endCycle = new int[cap];
+        mask = cap - 1;
+        size = 0;
+    }
+
+    private static int mix(int h)
+    {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,84 @@
+package com.johnaconda.pandora.attackcycle;
+
+/**
+ * The k most urgent candidates of a frame (fewest ticks left first), for the overlays' render budget.
+ *
+ * - begin(k), offer(position, ticksLeft) per candidate, then finish(): positions come out most urgent
+ *   first; no countdown (ticksLeft < 0) ranks last, ties keep the lower position first.
+ * - Bounded max-heap of the k best so far: O(n log k) per frame instead of sorting all n, and no
+ *   allocation once the heap has grown to k.
+ * - Render thread only; one instance per overlay.
+ */
+final class UrgencyRank
+{
+    // (urgency << 32 | position); a max-heap while offering, sorted ascending after finish()
+    private long[] heap = new long[16];
+    private int size, limit;
+
+    void begin(int k)
+    {
+        limit = Math.max(0, k);
+        if (heap.length < limit) heap = new long[limit];
+        size = 0;
+    }
+
+    void offer(int position, int ticksLeft)
+    {
+        if (limit == 0) return;
+        final long key = ((long) (ticksLeft < 0 ? Integer.MAX_VALUE : ticksLeft) << 32) | (position & 0xFFFFFFFFL);
+        if (size < limit)
+        {
+            heap[size] = key;
+            siftUp(size++);
+        }
+        else if (key < heap[0])
+        {
+            heap[0] = key; // evict the least urgent kept
+            siftDown(0, size);
+        }
+    }
+
+    /** Sort what was kept, most urgent first; returns the count. */
+    int finish()
+    {
+        for (int end = size - 1; end > 0; end--)
+        {
+            final long top = heap[0];
+            heap[0] = heap[end];
+            heap[end] = top;
+            siftDown(0, end);
+        }
+        return size;
+    }
+
+    /** Position of the i-th most urgent candidate (after finish()). */
+    int at(int i) { return (int) heap[i]; }
+
+    private void siftUp(int i)
+    {
+        final long key = heap[i];
+        while (i > 0)
+        {
+            final int parent = (i - 1) >>> 1;
+            if (heap[parent] >= key) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    private void siftDown(int i, int n)
+    {
+        final long key = heap[i];
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= n) break;
+            if (child + 1 < n && heap[child + 1] > heap[child]) child++;
+            if (key >= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = key;
+    }
+}
@@ -0,0 +1,40 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable view model for the overlays.
+ *
+ * Built on the client thread (GameTick + the few events that change a countdown) and
+ * published through a volatile field on CombatEngine. Overlays just read whatever is
+ * current: no locks, no DB calls, no allocation on the render path.
+ */
+final class ViewSnapshot
+{
+    static final ViewSnapshot EMPTY = new ViewSnapshot(-1, 0L, new AttackCyclePlugin.View[0]);
+
+    /** Game tick this snapshot was computed on; -1 for EMPTY. */
+    final int tick;
+
+    /** Monotonic publish counter; renderers can use it to detect "nothing changed". */
+    final long version;
+
+    /** Views sorted by NPC index. Never mutated after construction. */
+    final AttackCyclePlugin.View[] views;
+
+    private final List<AttackCyclePlugin.View> list;
+
+    ViewSnapshot(int tick, long version, AttackCyclePlugin.View[] views)
+    {
+        this.tick = tick;
+        this.version = version;
+        this.views = views;
+        this.list = Collections.unmodifiableList(Arrays.asList(views));
+    }
+
+    int size() { return views.length; }
+    boolean isEmpty() { return views.length == 0; }
+    List<AttackCyclePlugin.View> asList() { return list; }
+}
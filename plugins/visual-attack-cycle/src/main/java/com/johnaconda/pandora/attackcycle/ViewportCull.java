@@ -0,0 +1,70 @@
+package com.johnaconda.pandora.attackcycle;
+
+import net.runelite.api.Client;
+import net.runelite.api.Perspective;
+import net.runelite.api.coords.LocalPoint;
+
+/**
+ * Cheap, conservative "can this NPC's label be on screen" test, run before any text projection.
+ *
+ * - Same camera transform as Perspective.localToCanvas, but without the tile height lookup: the
+ *   height is bounded by the camera's height above ground instead, so the test only rejects points
+ *   that are behind the camera or left/right of the viewport whatever their height.
+ * - Camera state is read once per frame in begin(); a test is a few multiplies.
+ * - Never rejects anything if begin() couldn't read the camera.
+ */
+final class ViewportCull
+{
+    /** Scene bounds localToCanvas accepts (local units). */
+    private static final int SCENE_MIN = 128, SCENE_MAX = 13056;
+    /** Allowance for terrain above the ground under the camera (local units). */
+    private static final int HEIGHT_SLACK = 1024;
+    /** Labels are centred on their anchor; keep anchors this far outside the viewport. */
+    private static final int MARGIN_PX = 64;
+    /** localToCanvas drops points closer than this. */
+    private static final int NEAR = 50;
+
+    private boolean active;
+    private int camX, camY, yawSin, yawCos, pitchSin, pitchCos, maxDepthLift;
+    private long halfWidth, scale;
+
+    void begin(Client client)
+    {
+        active = false;
+        if (client == null) return;
+        try
+        {
+            camX = client.getCameraX();
+            camY = client.getCameraY();
+            final int pitch = client.getCameraPitch() & 2047, yaw = client.getCameraYaw() & 2047;
+            pitchSin = Perspective.SINE[pitch];
+            pitchCos = Perspective.COSINE[pitch];
+            yawSin = Perspective.SINE[yaw];
+            yawCos = Perspective.COSINE[yaw];
+            // Camera Z is negative above the ground: a point's z below the camera is at most this
+            final long maxBelow = Math.max(0, -client.getCameraZ()) + HEIGHT_SLACK;
+            maxDepthLift = (int) ((maxBelow * Math.max(0, pitchSin)) >> 16);
+            halfWidth = client.getViewportWidth() / 2 + MARGIN_PX;
+            scale = client.getScale();
+            active = scale > 0 && halfWidth > MARGIN_PX;
+        }
+        catch (Exception ignored) {}
+    }
+
+    boolean mayBeOnScreen(LocalPoint lp)
+    {
+        if (lp == null) return false;
+        final int x = lp.getX(), y = lp.getY();
+        if (x < SCENE_MIN || y < SCENE_MIN || x > SCENE_MAX || y > SCENE_MAX) return false;
+        if (!active) return true;
+
+        final int dx = x - camX, dy = y - camY;
+        final int x1 = dx * yawCos + dy * yawSin >> 16;
+        final int y1 = dy * yawCos - dx * yawSin >> 16;
+
+        // Largest depth the point can have at any height; smaller depth only moves it further out
+        final long depth = ((long) y1 * pitchCos >> 16) + maxDepthLift;
+        if (depth < NEAR) return false;
+        return Math.abs((long) x1) * scale <= halfWidth * depth;
+    }
+}
@@ -0,0 +1,171 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import net.runelite.api.Player;
+
+/**
+ * Headless load generator: N NPCs all fighting the local player, with scripted cadences, one phase
+ * switch each and a hitsplat after every swing, driven tick by tick through CombatEngine (the plugin
+ * minus RuneLite plumbing) with the live learning worker behind it.
+ *
+ * Per population it prints, over the measured ticks: handler time per tick (every event of the tick,
+ * GameTick last), views() time, bytes allocated per tick on the driving thread, and prediction
+ * accuracy (views whose countdown lands on the scripted next swing / views with a countdown).
+ *
+ * Usage: CombatLoad [populations=5,50,500] [ticks=1000] [warmup=500]
+ */
+public class CombatLoad
+{
+    private static final int TYPES = 8;          // distinct profiles
+    private static final int FIRST_INDEX = 100;  // NPC indices start here (boxed lookups stay honest)
+    private static final int HIT_DELAY = 1;      // hitsplat lands this long after the swing
+
+    public static void main(String[] args) throws Exception
+    {
+        final String[] pops = (args.length > 0 ? args[0] : "5,50,500").split(",");
+        final int ticks = (args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+        final int warmup = (args.length > 2 ? Integer.parseInt(args[2]) : 500);
+
+        System.out.println("npcs  ticks  tick_mean_us  tick_p50_us  tick_p99_us  tick_max_us  views_ns  alloc_b_tick  accuracy  coverage  batches  dropped  failed");
+        for (String p : pops) run(Integer.parseInt(p.trim()), ticks, warmup);
+    }
+
+    private static void run(int population, int ticks, int warmup)
+    {
+        final DbService db = DbService.detached(null);
+        for (int t = 0; t < TYPES; t++) db.putProfile(profile(t));
+
+        final LearningQueue queue = new LearningQueue(LearningQueue.DEFAULT_CAPACITY);
+        final LearningWorker learner = new LearningWorker(db, queue);
+        learner.start();
+        final CombatEngine engine = new CombatEngine(db, AttackCycleSettings.DEFAULTS, queue, learner::wake);
+        db.addListener(engine::onDbChanged);
+
+        final StandIn meStand = StandIn.player("me");
+        final Player me = meStand.player();
+
+        // Script: each NPC swings every baseTicks from a random offset, plays its type's trigger anim
+        // once at switchAt, then swings every phaseTicks
+        final Random rnd = new Random(42L + population);
+        final int total = warmup + ticks;
+        final StandIn[] npcs = new StandIn[population];
+        final int[] type = new int[population];
+        final int[] nextSwing = new int[population];
+        final int[] switchAt = new int[population];
+        final boolean[] switched = new boolean[population];
+        final int[] hitAt = new int[population];
+        for (int i = 0; i < population; i++)
+        {
+            type[i] = i % TYPES;
+            npcs[i] = StandIn.npc(FIRST_INDEX + i, npcId(type[i]), name(type[i]), level(type[i]));
+            nextSwing[i] = 1 + rnd.nextInt(baseTicks(type[i]));
+            switchAt[i] = 1 + rnd.nextInt(total);
+            hitAt[i] = -1;
+
+            engine.onNpcSpawned(npcs[i].npc(), me);
+            npcs[i].setInteracting(me);
+            engine.onInteractingChanged(npcs[i].npc(), me, me, 0);
+        }
+        meStand.setInteracting(npcs[0].npc());
+        engine.onInteractingChanged(me, npcs[0].npc(), me, 0);
+
+        final com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().getId();
+        final long[] tickNanos = new long[ticks];
+        long viewsNanos = 0, allocBytes = 0, predicted = 0, correct = 0, shown = 0;
+        int sink = 0;
+
+        for (int now = 1; now <= total; now++)
+        {
+            final boolean measured = now > warmup;
+            final long a0 = measured ? mx.getThreadAllocatedBytes(tid) : 0;
+            final long t0 = System.nanoTime();
+
+            for (int i = 0; i < population; i++)
+            {
+                final int ty = type[i];
+                if (!switched[i] && now == switchAt[i])
+                {
+                    // Phase switch: trigger anim now, first phase swing one phase interval later
+                    switched[i] = true;
+                    npcs[i].setAnimation(triggerAnim(ty));
+                    engine.onAnimationChanged(npcs[i].npc(), triggerAnim(ty), me, now);
+                    nextSwing[i] = now + phaseTicks(ty);
+                }
+                else if (now == nextSwing[i])
+                {
+                    final int anim = switched[i] ? phaseAnim(ty) : baseAnim(ty);
+                    npcs[i].setAnimation(anim);
+                    engine.onAnimationChanged(npcs[i].npc(), anim, me, now);
+                    nextSwing[i] = now + (switched[i] ? phaseTicks(ty) : baseTicks(ty));
+                    hitAt[i] = now + HIT_DELAY;
+                }
+                if (now == hitAt[i]) engine.onHitsplatOnMe(me, now);
+            }
+            engine.onGameTick(me, now);
+
+            final long t1 = System.nanoTime();
+            if (!measured) continue;
+            tickNanos[now - warmup - 1] = t1 - t0;
+            allocBytes += mx.getThreadAllocatedBytes(tid) - a0;
+
+            final long v0 = System.nanoTime();
+            final List<AttackCyclePlugin.View> views = engine.snapshot().asList();
+            viewsNanos += System.nanoTime() - v0;
+            sink += views.size();
+
+            for (AttackCyclePlugin.View v : views)
+            {
+                shown++;
+                if (v.ticksLeft <= 0) continue;
+                predicted++;
+                final int i = v.npc.getIndex() - FIRST_INDEX;
+                if (now + v.ticksLeft == nextSwing[i]) correct++;
+            }
+        }
+        learner.stop();
+
+        final long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long n : sorted) sum += n;
+        System.out.printf("%4d  %5d  %12.1f  %11.1f  %11.1f  %11.1f  %8d  %12d  %7.1f%%  %7.1f%%  %7d  %7d  %6d%n",
+                population, ticks,
+                sum / 1e3 / ticks, sorted[ticks / 2] / 1e3, sorted[Math.min(ticks - 1, (int) (ticks * 0.99))] / 1e3, sorted[ticks - 1] / 1e3,
+                viewsNanos / ticks, allocBytes / ticks,
+                predicted == 0 ? 0.0 : 100.0 * correct / predicted, shown == 0 ? 0.0 : 100.0 * predicted / shown,
+                learner.batches(), queue.dropped(), learner.failed());
+        if (sink < 0) System.out.println(); // keep views() live
+    }
+
+    // ---- scripted NPC types: base melee swing, trigger anim, faster phase swing ----
+    private static int npcId(int t)       { return 9000 + t; }
+    private static String name(int t)     { return "Load Npc " + t; }
+    private static int level(int t)       { return 100 + t; }
+    private static int baseTicks(int t)   { return 4 + (t % 4); }
+    private static int phaseTicks(int t)  { return Math.max(2, baseTicks(t) - 1); }
+    private static int baseAnim(int t)    { return 7000 + t * 10; }
+    private static int triggerAnim(int t) { return 7001 + t * 10; }
+    private static int phaseAnim(int t)   { return 7002 + t * 10; }
+
+    private static DbModels.NpcProfile profile(int t)
+    {
+        final DbModels.NpcProfile p = new DbModels.NpcProfile();
+        p.name = name(t);
+        p.level = level(t);
+        p.key = DbModels.EntityKey.of(p.name, p.level).key;
+        p.variantIds.add(npcId(t));
+        p.base.melee.defaultAnimId = baseAnim(t);
+        p.base.melee.ticks = baseTicks(t);
+
+        final DbModels.PhaseProfile enraged = new DbModels.PhaseProfile();
+        enraged.triggerAnimIds.add(triggerAnim(t));
+        enraged.melee.defaultAnimId = phaseAnim(t);
+        enraged.melee.ticks = phaseTicks(t);
+        p.phases.put("Enraged", enraged);
+        return p;
+    }
+}
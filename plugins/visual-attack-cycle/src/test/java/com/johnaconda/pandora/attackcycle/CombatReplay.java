@@ -0,0 +1,127 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import net.runelite.api.Actor;
+import net.runelite.api.Player;
+
+/**
+ * Replays a capture (panel: "Export capture…") through CombatEngine against a detached DbService,
+ * with no client running. Prints the overlay views whenever they change, then timings.
+ *
+ * Usage: CombatReplay <capture.acrp> [profiles.json]
+ */
+public class CombatReplay
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) { System.err.println("usage: CombatReplay <capture.acrp> [profiles.json]"); return; }
+
+        final CombatRecorder.Capture c;
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) { c = CombatRecorder.Capture.read(in); }
+
+        final DbService db = DbService.detached(null);
+        if (args.length > 1) db.importJson(Path.of(args[1]), ok -> { if (!ok) System.err.println("not an attack-cycle export: " + args[1]); }); // inline: detached
+
+        // Same wiring as the plugin, except the learning batch is applied inline at each tick
+        final LearningQueue queue = new LearningQueue(LearningQueue.DEFAULT_CAPACITY);
+        final ObservationBatch batch = new ObservationBatch();
+        final CombatEngine engine = new CombatEngine(db, AttackCycleSettings.DEFAULTS, queue, () -> {
+            while (queue.drainTick(batch) > 0) { db.ingest(batch); batch.clear(); }
+        });
+        db.addListener(engine::onDbChanged);
+
+        final StandIn meStand = StandIn.player("me");
+        final Player me = meStand.player();
+        final HashMap<Integer, StandIn> npcs = new HashMap<>();
+
+        long lastVersion = -1;
+        final long t0 = System.nanoTime();
+        for (int k = 0; k < c.size; k++)
+        {
+            final int now = c.tick[k];
+            switch (c.type[k])
+            {
+                case CombatRecorder.TICK:
+                    engine.onGameTick(me, now);
+                    break;
+                case CombatRecorder.SPAWN:
+                {
+                    final StandIn s = StandIn.npc(c.npc[k], c.npcId[k], c.nameOf(c.name[k]), c.level[k]);
+                    npcs.put(s.index, s);
+                    engine.onNpcSpawned(s.npc(), me);
+                    break;
+                }
+                case CombatRecorder.DESPAWN:
+                {
+                    final StandIn s = npcs.remove(c.npc[k]);
+                    if (s != null) engine.onNpcDespawned(s.npc());
+                    break;
+                }
+                case CombatRecorder.INTERACT:
+                {
+                    if (c.npc[k] >= 0) npc(npcs, c, k);
+                    final Actor source = actor(c.arg0[k], me, npcs);
+                    final Actor target = actor(c.arg1[k], me, npcs);
+                    if (source == me) meStand.setInteracting(target);
+                    else if (source != null && c.arg0[k] >= 0) npcs.get(c.arg0[k]).setInteracting(target);
+                    engine.onInteractingChanged(source, target, me, now);
+                    break;
+                }
+                case CombatRecorder.ANIM:
+                {
+                    final StandIn s = npc(npcs, c, k);
+                    s.setAnimation(c.arg0[k]);
+                    engine.onAnimationChanged(s.npc(), c.arg0[k], me, now);
+                    break;
+                }
+                case CombatRecorder.PROJECTILE:
+                {
+                    // Replay clock: CYCLES_PER_TICK cycles per recorded tick
+                    final int cycle = now * CombatEngine.CYCLES_PER_TICK;
+                    final int end = cycle + c.arg2[k];
+                    final Actor source = (c.npc[k] >= 0) ? npc(npcs, c, k).npc() : null;
+                    engine.onProjectileMoved(StandIn.projectile(source, actor(c.arg0[k], me, npcs), end - c.arg1[k], end), me, now, cycle);
+                    break;
+                }
+                case CombatRecorder.HIT:
+                    if (c.arg0[k] == CombatRecorder.ACTOR_ME) engine.onHitsplatOnMe(me, now);
+                    break;
+                default:
+                    break;
+            }
+
+            // Like the plugin's coalesced refresh: events dirty the view model, it's rebuilt once they're done
+            if (engine.snapshotDirty() && (k + 1 == c.size || c.tick[k + 1] != now)) engine.publishSnapshot(me, now);
+
+            final ViewSnapshot snap = engine.snapshot();
+            if (snap.version != lastVersion)
+            {
+                lastVersion = snap.version;
+                final StringBuilder sb = new StringBuilder().append(now).append(':');
+                for (AttackCyclePlugin.View v : snap.views) sb.append(' ').append(v.npc.getIndex()).append('=').append(v.ticksLeft);
+                System.out.println(sb);
+            }
+        }
+        final long nanos = System.nanoTime() - t0;
+        System.out.printf("%d events, %d names, %.2f ms (%.0f ns/event)%n",
+                c.size, c.names.length, nanos / 1e6, c.size == 0 ? 0.0 : (double) nanos / c.size);
+    }
+
+    // NPC at the event's index, created from the event's columns if the capture starts mid-fight
+    private static StandIn npc(HashMap<Integer, StandIn> npcs, CombatRecorder.Capture c, int k)
+    {
+        return npcs.computeIfAbsent(c.npc[k], i -> StandIn.npc(i, c.npcId[k], c.nameOf(c.name[k]), c.level[k]));
+    }
+
+    private static Actor actor(int code, Player me, HashMap<Integer, StandIn> npcs)
+    {
+        if (code == CombatRecorder.ACTOR_ME) return me;
+        if (code < 0) return null; // ACTOR_NONE, or another player (not modelled)
+        final StandIn s = npcs.get(code);
+        return s != null ? s.npc() : null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.Projectile;
+
+/**
+ * Mutable stand-in for an NPC or the local player (plus throwaway projectiles) for CombatReplay and
+ * CombatLoad, on dynamic proxies so they keep up with the client API. Identity semantics, like live
+ * actors.
+ *
+ * - Answers the getters the engine and DbService use; everything else returns 0/false/null.
+ * - Boxed answers are cached, so the getters don't allocate while a harness measures.
+ */
+final class StandIn implements InvocationHandler
+{
+    final int index;
+    final String name;
+    private final Integer boxedIndex, boxedId, boxedLevel;
+    private Integer animation = -1;
+    private Actor interacting;
+    private final Actor actor;
+
+    private StandIn(Class<? extends Actor> type, int index, int id, String name, int level)
+    {
+        this.index = index;
+        this.name = name;
+        this.boxedIndex = index;
+        this.boxedId = id;
+        this.boxedLevel = level;
+        this.actor = (Actor) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this);
+    }
+
+    static StandIn npc(int index, int id, String name, int level) { return new StandIn(NPC.class, index, id, name, level); }
+
+    static StandIn player(String name) { return new StandIn(Player.class, CombatRecorder.ACTOR_ME, 0, name, 0); }
+
+    /** Projectile from source (null = not reported) aimed at target, in flight from startCycle to endCycle; a new identity per call. */
+    static Projectile projectile(Actor source, Actor target, int startCycle, int endCycle)
+    {
+        final Integer start = startCycle, end = endCycle;
+        return (Projectile) Proxy.newProxyInstance(Projectile.class.getClassLoader(), new Class<?>[] { Projectile.class }, (p, m, a) -> {
+            switch (m.getName())
+            {
+                case "getInteracting": return target;
+                case "getSourceActor": return source;
+                case "getStartCycle": return start;
+                case "getEndCycle": return end;
+                case "equals": return p == a[0];
+                case "hashCode": return System.identityHashCode(p);
+                case "toString": return "StandIn.Projectile[" + start + ".." + end + "]";
+                default: return m.getReturnType() == int.class ? (Object) 0 : null;
+            }
+        });
+    }
+
+    NPC npc() { return (NPC) actor; }
+    Player player() { return (Player) actor; }
+
+    void setInteracting(Actor target) { interacting = target; }
+    void setAnimation(int anim) { if (animation != anim) animation = anim; }
+
+    @Override public Object invoke(Object proxy, Method m, Object[] a)
+    {
+        switch (m.getName())
+        {
+            case "getIndex": return boxedIndex;
+            case "getId": return boxedId;
+            case "getName": return name;
+            case "getCombatLevel": return boxedLevel;
+            case "getInteracting": return interacting;
+            case "getAnimation": return animation;
+            case "equals": return proxy == a[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return "StandIn[" + index + " " + name + "]";
+            default:
+                final Class<?> r = m.getReturnType();
+                if (r == int.class) return 0;
+                if (r == boolean.class) return false;
+                return null;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.johnaconda.pandora.attackcycle;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Crash/corruption check for the backup file: builds a DbStore the way DbService does (full write, then
+ * appends with edits and tombstones), damages copies of it and reopens them. Every shard whose newest
+ * frame is intact must come back byte for byte; deleted keys must stay deleted.
+ *
+ * Cases: DbCodec shard round trip; reopen after every append, through a delta index chain of depth 32
+ * and the full index that follows; truncated trailer; torn append at the tail; a corrupt shard with an
+ * intact and with a missing index. Throws on the first failure.
+ *
+ * Usage: StoreSalvage [npcs=48] [appends=40]
+ */
+public class StoreSalvage
+{
+    private static final long SEED = 7L;
+
+    private static final Map<String, byte[]> expected = new LinkedHashMap<>(); // key -> newest payload
+    private static final List<String> deleted = new ArrayList<>();
+    private static long seq;
+
+    public static void main(String[] args) throws Exception
+    {
+        final int npcs = (args.length > 0 ? Integer.parseInt(args[0]) : 48);
+        final int appends = (args.length > 1 ? Integer.parseInt(args[1]) : 40);
+
+        final Path dir = Files.createTempDirectory("acdb-salvage");
+        try
+        {
+            codecRoundTrip(npcs);
+            final Path file = dir.resolve("db.bin");
+            writeChain(file, npcs, appends);
+            truncatedTrailer(file, dir.resolve("trailer.bin"));
+            tornTail(file, dir.resolve("torn.bin"));
+            corruptShard(file, dir.resolve("shard.bin"));
+            System.out.println("all cases passed (" + expected.size() + " live, " + deleted.size() + " deleted, seq " + seq + ")");
+        }
+        finally
+        {
+            try (Stream<Path> s = Files.walk(dir))
+            {
+                s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    // ---- cases ----
+
+    private static void codecRoundTrip(int npcs) throws IOException
+    {
+        for (int i = 0; i < npcs; i++)
+        {
+            final DbModels.NpcProfile p = profile(i, 1);
+            final Map<Integer, DbModels.RecRow> r = rows(i, 1);
+            final byte[] bytes = DbCodec.encodeShard(key(i), p, r);
+            final DbCodec.Shard s = DbCodec.decodeShard(bytes);
+            check(key(i).equals(s.key) && !s.tombstone, "round trip key " + key(i));
+            check((p == null) == (s.profile == null), "round trip profile presence " + key(i));
+            if (p != null)
+            {
+                check(p.name.equals(s.profile.name) && p.level == s.profile.level, "round trip name/level " + key(i));
+                check(p.variantIds.equals(s.profile.variantIds), "round trip variant ids " + key(i));
+                check(p.phases.keySet().equals(s.profile.phases.keySet()), "round trip phases " + key(i));
+                check(p.base.melee.ticks.equals(s.profile.base.melee.ticks), "round trip block ticks " + key(i));
+            }
+            check(r.keySet().equals(s.rows.keySet()), "round trip row keys " + key(i));
+            for (DbModels.RecRow a : r.values())
+            {
+                final DbModels.RecRow b = s.rows.get(a.animId);
+                check(a.seen == b.seen && a.lastSeenTick == b.lastSeenTick && a.type == b.type && a.style == b.style, "round trip row " + key(i));
+                check(a.gapsRecent.median() == b.gapsRecent.median(), "round trip gap window " + key(i));
+                check(a.gapHist.estimate() == b.gapHist.estimate() && a.gapHist.stamp() == b.gapHist.stamp(), "round trip histogram " + key(i));
+            }
+            check(Arrays.equals(bytes, DbCodec.encodeShard(s.key, s.profile, s.rows)), "re-encode differs " + key(i));
+        }
+        final DbCodec.Shard t = DbCodec.decodeShard(DbCodec.encodeTombstone(key(0)));
+        check(t.tombstone && key(0).equals(t.key), "tombstone round trip");
+        System.out.println("codec round trip: " + npcs + " shards ok");
+    }
+
+    /**
+     * Full write, then appends: two edits each, a delete every third and a re-add every fifth. Reopened
+     * after every append; the first 32 leave a delta chain that deep, the next one writes a full index.
+     */
+    private static void writeChain(Path file, int npcs, int appends) throws IOException
+    {
+        try (DbStore.Writer w = DbStore.Writer.create(file))
+        {
+            for (int i = 0; i < npcs; i++) put(w, i, 1);
+            w.finish(++seq);
+        }
+        final Random rnd = new Random(SEED);
+        try (DbStore store = DbStore.open(file))
+        {
+            check(!store.salvaged(), "fresh file salvaged");
+            same(store, "fresh file");
+            for (int n = 1; n <= appends; n++)
+            {
+                try (DbStore.Writer w = store.appender())
+                {
+                    put(w, rnd.nextInt(npcs), n + 1);
+                    put(w, rnd.nextInt(npcs), n + 1);
+                    if (n % 3 == 0)
+                    {
+                        final String k = new ArrayList<>(expected.keySet()).get(rnd.nextInt(expected.size()));
+                        w.delete(k);
+                        expected.remove(k);
+                        deleted.add(k);
+                    }
+                    if (n % 5 == 0 && !deleted.isEmpty()) put(w, indexOf(deleted.get(0)), n + 1);
+                    w.finish(++seq);
+                    store.adopt(w);
+                }
+                try (DbStore again = DbStore.open(file))
+                {
+                    check(!again.salvaged(), "append " + n + ": index chain unreadable");
+                    same(again, "append " + n);
+                }
+            }
+        }
+        check(!deleted.isEmpty(), "no tombstones written");
+        System.out.println("index chain: " + appends + " appends reopened ok");
+    }
+
+    private static void truncatedTrailer(Path file, Path copy) throws IOException
+    {
+        Files.copy(file, copy);
+        try (RandomAccessFile f = new RandomAccessFile(copy.toFile(), "rw")) { f.setLength(f.length() - 5); }
+        try (DbStore s = DbStore.open(copy))
+        {
+            check(s.salvaged(), "truncated trailer: not salvaged");
+            same(s, "truncated trailer");
+        }
+        System.out.println("truncated trailer: salvaged ok");
+    }
+
+    /** A crash halfway through an append: the new shard is torn and there's no index or trailer after it. */
+    private static void tornTail(Path file, Path copy) throws IOException
+    {
+        Files.copy(file, copy);
+        final long before = Files.size(copy);
+        try (DbStore s = DbStore.open(copy); DbStore.Writer w = s.appender())
+        {
+            final int i = indexOf(expected.keySet().iterator().next());
+            w.put(key(i), profile(i, 999), rows(i, 999));
+            w.finish(seq + 1);
+        }
+        try (RandomAccessFile f = new RandomAccessFile(copy.toFile(), "rw")) { f.setLength(before + (Files.size(copy) - before) / 3); }
+        try (DbStore s = DbStore.open(copy))
+        {
+            check(s.salvaged(), "torn tail: not salvaged");
+            same(s, "torn tail");
+        }
+        System.out.println("torn tail: salvaged ok");
+    }
+
+    /** Flip a byte in one shard's newest frame: only that key may be lost (or fall back to an older copy). */
+    private static void corruptShard(Path file, Path copy) throws IOException
+    {
+        Files.copy(file, copy);
+        final String victim;
+        final long at;
+        try (DbStore s = DbStore.open(copy))
+        {
+            final DbStore.Entry e = s.index().values().iterator().next();
+            victim = e.key;
+            at = e.offset + e.length / 2;
+        }
+        try (RandomAccessFile f = new RandomAccessFile(copy.toFile(), "rw"))
+        {
+            f.seek(at);
+            final int b = f.read();
+            f.seek(at);
+            f.write(b ^ 0x55);
+        }
+
+        // Index intact: it still lists the key, but reading it fails; the others read fine
+        try (DbStore s = DbStore.open(copy))
+        {
+            check(!s.salvaged(), "corrupt shard: index not used");
+            boolean failed = false;
+            try { s.read(s.index().get(victim)); } catch (IOException expectedFailure) { failed = true; }
+            check(failed, "corrupt shard: read succeeded");
+            sameExcept(s, victim, "corrupt shard, intact index");
+        }
+
+        // Index gone too: the scan skips the damaged frame
+        try (RandomAccessFile f = new RandomAccessFile(copy.toFile(), "rw")) { f.setLength(f.length() - 5); }
+        try (DbStore s = DbStore.open(copy))
+        {
+            check(s.salvaged(), "corrupt shard: not salvaged");
+            sameExcept(s, victim, "corrupt shard, salvaged");
+            final DbStore.Entry e = s.index().get(victim);
+            if (e != null) check(!Arrays.equals(s.readRaw(e), expected.get(victim)), "corrupt shard: damaged copy served");
+        }
+        System.out.println("corrupt shard: others recovered ok");
+    }
+
+    // ---- checks ----
+
+    private static void same(DbStore s, String what) throws IOException
+    {
+        check(s.journalSeq() == seq, what + ": journalSeq " + s.journalSeq() + " != " + seq);
+        check(s.index().keySet().equals(expected.keySet()), what + ": keys differ " + s.index().keySet() + " vs " + expected.keySet());
+        for (Map.Entry<String, byte[]> e : expected.entrySet())
+            check(Arrays.equals(s.readRaw(s.index().get(e.getKey())), e.getValue()), what + ": shard " + e.getKey() + " differs");
+    }
+
+    private static void sameExcept(DbStore s, String victim, String what) throws IOException
+    {
+        for (String k : deleted) if (!expected.containsKey(k)) check(!s.index().containsKey(k), what + ": deleted key " + k + " came back");
+        for (Map.Entry<String, byte[]> e : expected.entrySet())
+        {
+            if (e.getKey().equals(victim)) continue;
+            final DbStore.Entry at = s.index().get(e.getKey());
+            check(at != null, what + ": lost " + e.getKey());
+            check(Arrays.equals(s.readRaw(at), e.getValue()), what + ": shard " + e.getKey() + " differs");
+        }
+    }
+
+    private static void check(boolean ok, String message)
+    {
+        if (!ok) throw new IllegalStateException(message);
+    }
+
+    // ---- data ----
+
+    private static void put(DbStore.Writer w, int i, int version) throws IOException
+    {
+        final DbModels.NpcProfile p = profile(i, version);
+        final Map<Integer, DbModels.RecRow> r = rows(i, version);
+        w.put(key(i), p, r);
+        expected.put(key(i), DbCodec.encodeShard(key(i), p, r));
+        deleted.remove(key(i));
+    }
+
+    private static String key(int i) { return "Npc " + i + "#" + (10 + i); }
+
+    private static int indexOf(String key) { return Integer.parseInt(key.substring(4, key.indexOf('#'))); }
+
+    /** Every seventh NPC has recordings only. */
+    private static DbModels.NpcProfile profile(int i, int version)
+    {
+        if (i % 7 == 3) return null;
+        final DbModels.NpcProfile p = new DbModels.NpcProfile();
+        p.key = key(i);
+        p.name = "Npc " + i;
+        p.level = 10 + i;
+        p.variantIds.add(1000 + i);
+        p.variantIds.add(2000 + i);
+        p.base.melee.defaultAnimId = 400 + i;
+        p.base.melee.ticks = 4 + version % 3;
+        final DbModels.StyleAnimSettings st = new DbModels.StyleAnimSettings();
+        st.ticks = 5;
+        st.projSpeed = version;
+        p.base.melee.perAnim.put(400 + i, st);
+        if (i % 4 == 0)
+        {
+            final DbModels.PhaseProfile ph = new DbModels.PhaseProfile();
+            ph.magic.ticks = 6;
+            ph.triggerAnimIds.add(900 + i);
+            p.phases.put("Enraged", ph);
+        }
+        return p;
+    }
+
+    private static Map<Integer, DbModels.RecRow> rows(int i, int version)
+    {
+        final Map<Integer, DbModels.RecRow> rows = new HashMap<>();
+        for (int j = 0; j < 3; j++)
+        {
+            final DbModels.RecRow r = new DbModels.RecRow();
+            r.animId = 400 + i + j;
+            r.type = DbModels.AnimUiType.ATTACK;
+            r.style = DbModels.Style.values()[j % DbModels.Style.values().length];
+            r.seen = version * 10 + j;
+            if (j == 0) r.estTicksUser = 4;
+            int tick = 100 * version;
+            for (int g = 0; g < 20; g++) r.pushInterval(4 + (g % 5 == 0 ? 1 : 0), tick += 4);
+            r.lastSeenTick = tick;
+            r.pushProj(30 + j);
+            rows.put(r.animId, r);
+        }
+        return rows;
+    }
+}